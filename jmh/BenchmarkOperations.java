@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import benchmarks.ImageOperations;
+
+/**
+ * Implements the benchmarked operations for the JMH benchmarks in the
+ * benchmarks package. Images are ImageProcessors, importance is the
+ * list of rows returned by getImportance, graphs are WGraphs and search
+ * contexts are WGraph.SearchContexts.
+ *
+ * @author Weston Berg
+ */
+public class BenchmarkOperations implements ImageOperations {
+	
+	@Override
+	public Object generate(String content, int height, int width) {
+		if (content.equals("random")) {
+			return ImageBenchmark.randomImage(height, width);
+		} else if (content.equals("structured")) {
+			return ImageBenchmark.structuredImage(height, width);
+		}
+		throw new IllegalArgumentException("Unknown content " + content);
+	} // generate
+	
+	@Override
+	public void write(Object image, String FName) throws IOException {
+		((ImageProcessor)image).write(FName);
+	} // write
+	
+	@Override
+	public Object load(String FName) {
+		return new ImageProcessor(FName);
+	} // load
+	
+	@Override
+	public Object getImportance(Object image) {
+		return ((ImageProcessor)image).getImportance();
+	} // getImportance
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object buildGraph(Object importance) {
+		return new WGraph((ArrayList<ArrayList<Integer>>)importance);
+	} // buildGraph
+	
+	@Override
+	public Object newSearchContext(Object graph) {
+		return ((WGraph)graph).newSearchContext();
+	} // newSearchContext
+	
+	@Override
+	public int V2V(Object graph, Object ctx, int ux, int uy, int vx, int vy) {
+		return ((WGraph)graph).V2V((WGraph.SearchContext)ctx, ux, uy, vx, vy);
+	} // V2V
+	
+	@Override
+	public int V2S(Object graph, Object ctx, int ux, int uy, int[] S) {
+		return ((WGraph)graph).V2S((WGraph.SearchContext)ctx, ux, uy, S);
+	} // V2S
+	
+	@Override
+	public int S2S(Object graph, Object ctx, int[] S1, int[] S2) {
+		return ((WGraph)graph).S2S((WGraph.SearchContext)ctx, S1, S2);
+	} // S2S
+	
+	@Override
+	public void writeReduced(Object image, int k, String FName) {
+		((ImageProcessor)image).writeReduced(k, FName);
+	} // writeReduced
+	
+} // BenchmarkOperations
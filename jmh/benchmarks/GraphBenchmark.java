@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building a WGraph from importance lists and its V2V, V2S and
+ * S2S searches. Searches reuse one graph and search context per trial,
+ * V2V runs corner to corner, V2S from the middle of the top row to the
+ * bottom row and S2S from the top row to the bottom row.
+ *
+ * @author Weston Berg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+	private Object graph, ctx;
+	private int[] top, bottom;
+	
+	@Setup(Level.Trial)
+	public void setup(ImageState state) {
+		graph = state.ops.buildGraph(state.importance);
+		ctx = state.ops.newSearchContext(graph);
+		top = new int[2 * state.width];
+		bottom = new int[2 * state.width];
+		for (int j = 0; j < state.width; j++) {
+			top[2 * j] = j;
+			top[2 * j + 1] = 0;
+			bottom[2 * j] = j;
+			bottom[2 * j + 1] = state.height - 1;
+		}
+	} // setup
+	
+	@Benchmark
+	public void build(ImageState state, Blackhole bh) {
+		bh.consume(state.ops.buildGraph(state.importance));
+	} // build
+	
+	@Benchmark
+	public void V2V(ImageState state, Blackhole bh) {
+		bh.consume(state.ops.V2V(graph, ctx, 0, 0, state.width - 1, state.height - 1));
+		bh.consume(ctx);
+	} // V2V
+	
+	@Benchmark
+	public void V2S(ImageState state, Blackhole bh) {
+		bh.consume(state.ops.V2S(graph, ctx, state.width / 2, 0, bottom));
+		bh.consume(ctx);
+	} // V2S
+	
+	@Benchmark
+	public void S2S(ImageState state, Blackhole bh) {
+		bh.consume(state.ops.S2S(graph, ctx, top, bottom));
+		bh.consume(ctx);
+	} // S2S
+	
+} // GraphBenchmark
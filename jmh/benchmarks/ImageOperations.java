@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+
+/**
+ * Operations of the image resizer measured by the benchmarks. JMH only
+ * accepts benchmarks in a named package, which cannot refer to classes
+ * in the default package, so they are reached through this interface.
+ * Images, importance lists, graphs and search contexts are passed as
+ * Objects of the types BenchmarkOperations documents.
+ *
+ * @author Weston Berg
+ */
+public interface ImageOperations {
+	
+	/**
+	 * @param content  "random" or "structured", as generated by ImageBenchmark
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @return  Generated image
+	 */
+	Object generate(String content, int height, int width);
+	
+	void write(Object image, String FName) throws IOException;
+	
+	/**
+	 * @param FName  Filename of file containing pixel info
+	 * @return  Image read by the ImageProcessor(String) loader
+	 */
+	Object load(String FName);
+	
+	Object getImportance(Object image);
+	
+	Object buildGraph(Object importance);
+	
+	Object newSearchContext(Object graph);
+	
+	int V2V(Object graph, Object ctx, int ux, int uy, int vx, int vy);
+	
+	int V2S(Object graph, Object ctx, int ux, int uy, int[] S);
+	
+	int S2S(Object graph, Object ctx, int[] S1, int[] S2);
+	
+	void writeReduced(Object image, int k, String FName);
+	
+	/**
+	 * @return  Operations implemented by BenchmarkOperations
+	 */
+	static ImageOperations instance() {
+		try {
+			return (ImageOperations)Class.forName("BenchmarkOperations").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("BenchmarkOperations is not on the class path", e);
+		}
+	} // instance
+	
+} // ImageOperations
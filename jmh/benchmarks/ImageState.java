@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Synthetic image shared by the benchmarks of one trial, with its text
+ * and binary files and its importance lists
+ *
+ * @author Weston Berg
+ */
+@State(Scope.Benchmark)
+public class ImageState {
+	
+	/**
+	 * HEIGHTxWIDTH of the image
+	 */
+	@Param({"64x64", "512x512", "2048x1024"})
+	public String size;
+	/**
+	 * Seeded "random" pixels or "structured" gradients, stripes and blocks
+	 */
+	@Param({"random", "structured"})
+	public String content;
+	
+	public ImageOperations ops;
+	public int height, width;
+	public Object image;
+	public Object importance;
+	public File text, binary, out;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		String[] dims = size.split("x");
+		height = Integer.parseInt(dims[0]);
+		width = Integer.parseInt(dims[1]);
+		ops = ImageOperations.instance();
+		image = ops.generate(content, height, width);
+		importance = ops.getImportance(image);
+		text = File.createTempFile("bench", ".txt");
+		binary = File.createTempFile("bench", ".bimg");
+		out = File.createTempFile("bench", ".bimg");
+		ops.write(image, text.getPath());
+		ops.write(image, binary.getPath());
+	} // setup
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		text.delete();
+		binary.delete();
+		out.delete();
+	} // tearDown
+	
+} // ImageState
@@ -0,0 +1,363 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for reducing the width of many images in one JVM. Images are
+ * read and written on a pool of I/O threads and carved on a fixed pool
+ * of compute threads. Jobs only start once the memory they are
+ * estimated to need fits in the memory budget, so large images wait
+ * for others to finish instead of running the JVM out of memory.
+ *
+ * Usage:
+ *   java BatchResize [options] manifest
+ *   java BatchResize [options] -dir inputDir outputDir k
+ * Each non-empty manifest line not starting with '#' holds an input
+ * filename, an output filename and the number of pixels to reduce the
+ * width by, separated by whitespace. In directory mode every .txt and
+ * .bimg file of inputDir is reduced by k into a file of the same name
+ * in outputDir.
+ * Options:
+ *   -threads n  Number of compute threads (default: available processors)
+ *   -io n  Number of I/O threads (default: 4)
+ *   -memory mb  Memory budget in megabytes (default: 3/4 of max heap)
+ *   -batch n  Number of cuts removed per importance computation (default: 1, exact)
+ *   -metrics  Print time, pixels and bytes per phase at the end, see ImageMetrics
+ *
+ * @author Weston Berg
+ */
+public class BatchResize {
+	
+	/**
+	 * Class representing a single resize job and its outcome
+	 * @author Weston Berg
+	 */
+	public static final class Job {
+		private final String input;
+		private final String output;
+		private final int k;
+		// Outcome of the job
+		private long loadNanos, carveNanos, writeNanos;
+		private volatile Throwable error;
+		
+		/**
+		 * @param input  Filename of image to reduce
+		 * @param output  Filename to write reduced image to
+		 * @param k  Number of pixels to reduce image width by
+		 */
+		public Job(String input, String output, int k) {
+			this.input = input;
+			this.output = output;
+			this.k = k;
+		} // Job
+		
+		/**
+		 * @return  Exception the job failed with, null if it succeeded
+		 */
+		public Throwable getError() {
+			return error;
+		} // getError
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			if (error != null) {
+				return String.format("FAILED %s -> %s (k=%d): %s", input, output, k, error);
+			}
+			return String.format("OK     %s -> %s (k=%d): load %d ms, carve %d ms, write %d ms",
+								 input, output, k, loadNanos / 1000000, carveNanos / 1000000, writeNanos / 1000000);
+		} // toString
+	} // Job
+	
+	/**
+	 * Estimated bytes of heap needed per pixel while an image is carved:
+	 * the image and its copy, importance, cut costs and the search
+	 * replay arrays
+	 */
+	private static final int BYTES_PER_PIXEL = 64;
+	private static final int MB = 1 << 20;
+	
+	private final ExecutorService ioPool;
+	private final ExecutorService computePool;
+	/**
+	 * Memory budget in megabytes, one permit per megabyte
+	 */
+	private final Semaphore memory;
+	private final int memoryMB;
+	private int seamBatchSize = 1;
+	
+	/**
+	 * @param computeThreads  Number of threads carving images
+	 * @param ioThreads  Number of threads reading and writing images
+	 * @param memoryBudget  Bytes of heap jobs may use at the same time
+	 */
+	public BatchResize(int computeThreads, int ioThreads, long memoryBudget) {
+		ioPool = Executors.newFixedThreadPool(ioThreads, daemonThreads("batch-io-"));
+		computePool = Executors.newFixedThreadPool(computeThreads, daemonThreads("batch-compute-"));
+		memoryMB = (int)Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / MB));
+		memory = new Semaphore(memoryMB, true);
+	} // BatchResize
+	
+	/**
+	 * @param prefix  Prefix of thread names
+	 * @return  Factory creating numbered daemon threads
+	 */
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	} // daemonThreads
+	
+	/**
+	 * @param batchSize  Number of cuts removed per importance computation,
+	 					 1 for exact cuts (default)
+	 * @see ImageProcessor#setSeamBatchSize(int)
+	 */
+	public void setSeamBatchSize(int batchSize) {
+		seamBatchSize = batchSize;
+	} // setSeamBatchSize
+	
+	/**
+	 * Runs the given jobs and waits for all of them to finish. A failing
+	 * job is recorded in its Job and does not stop the others.
+	 * @param jobs  Jobs to run
+	 * @return  Number of jobs that failed
+	 */
+	public int run(List<Job> jobs) {
+		List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>(jobs.size());
+		for (Job job : jobs) {
+			int permits;
+			try {
+				permits = estimateMB(job.input);
+			} catch (IOException | RuntimeException e) {
+				job.error = e;
+				System.out.println(job);
+				continue;
+			}
+			memory.acquireUninterruptibly(permits);
+			pending.add(CompletableFuture.supplyAsync(() -> load(job), ioPool)
+						.thenApplyAsync(img -> carve(job, img, seamBatchSize), computePool)
+						.thenAcceptAsync(img -> write(job, img), ioPool)
+						.handle((v, e) -> {
+							memory.release(permits);
+							if (e != null) {
+								job.error = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+							}
+							System.out.println(job);
+							return null;
+						}));
+		}
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+		int failed = 0;
+		for (Job job : jobs) {
+			if (job.error != null) {
+				failed++;
+			}
+		}
+		return failed;
+	} // run
+	
+	/**
+	 * Stops the worker threads once queued jobs are done
+	 */
+	public void shutdown() {
+		ioPool.shutdown();
+		computePool.shutdown();
+	} // shutdown
+	
+	/**
+	 * @param FName  Filename of image
+	 * @return  Megabytes of the memory budget needed to carve the image,
+	 			at most the whole budget
+	 * @throws IOException  If image header cannot be read
+	 */
+	private int estimateMB(String FName) throws IOException {
+		int[] dims = ImageProcessor.readDimensions(FName);
+		long bytes = (long)dims[0] * dims[1] * BYTES_PER_PIXEL;
+		return (int)Math.min(memoryMB, bytes / MB + 1);
+	} // estimateMB
+	
+	private static ImageProcessor load(Job job) {
+		long start = System.nanoTime();
+		try {
+			ImageProcessor img = ImageProcessor.read(job.input);
+			job.loadNanos = System.nanoTime() - start;
+			return img;
+		} catch (IOException e) {
+			throw new CompletionException(e);
+		}
+	} // load
+	
+	private static ImageProcessor carve(Job job, ImageProcessor img, int batchSize) {
+		long start = System.nanoTime();
+		img.setSeamBatchSize(batchSize);
+		ImageProcessor reduced = img.reduce(job.k);
+		job.carveNanos = System.nanoTime() - start;
+		return reduced;
+	} // carve
+	
+	private static void write(Job job, ImageProcessor img) {
+		long start = System.nanoTime();
+		try {
+			img.write(job.output);
+			job.writeNanos = System.nanoTime() - start;
+		} catch (IOException e) {
+			throw new CompletionException(e);
+		}
+	} // write
+	
+	/**
+	 * Reads jobs from a manifest file
+	 * @param FName  Filename of manifest
+	 * @return  Jobs listed in the manifest
+	 * @throws IOException  If manifest cannot be read or a line is malformed
+	 */
+	public static List<Job> readManifest(String FName) throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		try (BufferedReader br = new BufferedReader(new FileReader(FName))) {
+			String line;
+			String[] spltLine;
+			int lineNum = 0;
+			while ((line = br.readLine()) != null) {
+				lineNum++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				spltLine = line.split("\\s+");
+				if (spltLine.length != 3) {
+					throw new IOException(FName + ":" + lineNum + ": expected 'input output k'");
+				}
+				try {
+					jobs.add(new Job(spltLine[0], spltLine[1], Integer.parseInt(spltLine[2])));
+				} catch (NumberFormatException e) {
+					throw new IOException(FName + ":" + lineNum + ": invalid k '" + spltLine[2] + "'");
+				}
+			}
+		}
+		return jobs;
+	} // readManifest
+	
+	/**
+	 * Creates a job for every image in a directory
+	 * @param inDir  Directory of images to reduce
+	 * @param outDir  Directory to write reduced images to
+	 * @param k  Number of pixels to reduce image widths by
+	 * @return  Jobs for the images of the directory, sorted by filename
+	 * @throws IOException  If input directory cannot be listed
+	 */
+	public static List<Job> listDirectory(String inDir, String outDir, int k) throws IOException {
+		File[] files = new File(inDir).listFiles((dir, name) ->
+			name.endsWith(".txt") || name.endsWith(ImageProcessor.BINARY_EXTENSION));
+		if (files == null) {
+			throw new IOException("Cannot list directory " + inDir);
+		}
+		Arrays.sort(files);
+		new File(outDir).mkdirs();
+		List<Job> jobs = new ArrayList<Job>(files.length);
+		for (File f : files) {
+			jobs.add(new Job(f.getPath(), new File(outDir, f.getName()).getPath(), k));
+		}
+		return jobs;
+	} // listDirectory
+	
+	public static void main(String[] args) throws IOException {
+		int computeThreads = Runtime.getRuntime().availableProcessors();
+		int ioThreads = 4;
+		long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+		int batchSize = 1;
+		List<Job> jobs = null;
+		int a = 0;
+		while (a < args.length && args[a].startsWith("-") && !args[a].equals("-dir")) {
+			if (args[a].equals("-metrics")) {
+				ImageMetrics.setEnabled(true);
+				a++;
+				continue;
+			}
+			if (a + 1 >= args.length) {
+				usage();
+				return;
+			}
+			switch (args[a]) {
+			case "-threads":
+				computeThreads = Integer.parseInt(args[a + 1]);
+				break;
+			case "-io":
+				ioThreads = Integer.parseInt(args[a + 1]);
+				break;
+			case "-memory":
+				memoryBudget = Long.parseLong(args[a + 1]) * MB;
+				break;
+			case "-batch":
+				batchSize = Integer.parseInt(args[a + 1]);
+				break;
+			default:
+				usage();
+				return;
+			}
+			a += 2;
+		}
+		if (a + 4 == args.length && args[a].equals("-dir")) {
+			jobs = listDirectory(args[a + 1], args[a + 2], Integer.parseInt(args[a + 3]));
+		} else if (a + 1 == args.length) {
+			jobs = readManifest(args[a]);
+		} else {
+			usage();
+			return;
+		}
+		
+		BatchResize batch = new BatchResize(computeThreads, ioThreads, memoryBudget);
+		batch.setSeamBatchSize(batchSize);
+		long start = System.nanoTime();
+		int failed = batch.run(jobs);
+		batch.shutdown();
+		try {
+			batch.computePool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.printf("%d jobs, %d failed, %d ms total%n", jobs.size(), failed,
+						  (System.nanoTime() - start) / 1000000);
+		if (ImageMetrics.isEnabled()) {
+			System.out.print(ImageMetrics.report());
+		}
+		if (failed > 0) {
+			System.exit(1);
+		}
+	} // main
+	
+	private static void usage() {
+		System.err.println("Usage: java BatchResize [-threads n] [-io n] [-memory mb] [-batch n] [-metrics] manifest");
+		System.err.println("       java BatchResize [-threads n] [-io n] [-memory mb] [-batch n] [-metrics] -dir inputDir outputDir k");
+	} // usage
+	
+} // BatchResize
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures read and write throughput of the text and binary
+ * image formats on a synthetic image.
+ *
+ * Usage: java FormatBenchmark [megapixels] [iterations] [directory]
+ * Defaults to a 50 megapixel image, 3 iterations and the
+ * system temporary directory.
+ *
+ * @author Weston Berg
+ */
+public class FormatBenchmark {
+	
+	public static void main(String[] args) throws IOException {
+		double megapixels = (args.length > 0) ? Double.parseDouble(args[0]) : 50;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		File dir = new File((args.length > 2) ? args[2] : System.getProperty("java.io.tmpdir"));
+		
+		// Build a roughly 4:3 image of random pixels
+		int width = (int)Math.sqrt(megapixels * 1e6 * 4 / 3);
+		int height = (int)(megapixels * 1e6 / width);
+		int[] pixels = new int[height * width];
+		Random rand = new Random(42);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = rand.nextInt(1 << 24);
+		}
+		ImageProcessor img = new ImageProcessor(height, width, pixels);
+		System.out.println("Image: " + height + " x " + width + " (" + pixels.length + " pixels)");
+		
+		File text = new File(dir, "format-benchmark.txt");
+		File binary = new File(dir, "format-benchmark" + ImageProcessor.BINARY_EXTENSION);
+		try {
+			for (int it = 1; it <= iterations; it++) {
+				System.out.println("Iteration " + it);
+				measureWrite("text", img, text);
+				measureRead("text", text);
+				measureWrite("binary", img, binary);
+				measureRead("binary", binary);
+			}
+		} finally {
+			text.delete();
+			binary.delete();
+		}
+	} // main
+	
+	/**
+	 * @param label  Format name to report
+	 * @param img  Image to write
+	 * @param f  File to write to
+	 * @throws IOException  If file cannot be written
+	 */
+	private static void measureWrite(String label, ImageProcessor img, File f) throws IOException {
+		long start = System.nanoTime();
+		img.write(f.getPath());
+		report("write " + label, f.length(), System.nanoTime() - start);
+	} // measureWrite
+	
+	/**
+	 * @param label  Format name to report
+	 * @param f  File to read
+	 */
+	private static void measureRead(String label, File f) {
+		long start = System.nanoTime();
+		ImageProcessor img = new ImageProcessor(f.getPath());
+		long elapsed = System.nanoTime() - start;
+		if (img.getPixels() == null) {
+			throw new IllegalStateException("Failed to read " + f);
+		}
+		report("read  " + label, f.length(), elapsed);
+	} // measureRead
+	
+	/**
+	 * @param label  Operation name to report
+	 * @param bytes  Number of bytes processed
+	 * @param nanos  Time taken in nanoseconds
+	 */
+	private static void report(String label, long bytes, long nanos) {
+		double mb = bytes / 1e6;
+		double secs = nanos / 1e9;
+		System.out.printf("  %-13s %9.1f MB in %7.3f s  %8.1f MB/s%n", label, mb, secs, mb / secs);
+	} // report
+	
+} // FormatBenchmark
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks each stage of reducing an image: parsing text and binary
+ * files, computing importance, building a WGraph, the WGraph searches,
+ * the seam finder, and writeReduced end to end. Synthetic images of each
+ * size are generated with seeded random content and with structured
+ * content (gradients, stripes and blocks), so runs are repeatable.
+ *
+ * Each benchmark is warmed up, then run until the measurement time has
+ * passed. The average time per operation is reported along with the bytes
+ * allocated per operation by the benchmark thread, so memory regressions
+ * show up as well as slowdowns. Keep parallelism at 1, allocation on other
+ * threads is not counted. This is a quick check in a single JVM, compare
+ * changes with the forked JMH benchmarks in jmh instead.
+ *
+ * Usage: java ImageBenchmark [-time seconds] [-filter name] [HEIGHTxWIDTH ...]
+ * Sizes default to 64x64, 512x512 and 2048x1024.
+ *
+ * @author Weston Berg
+ */
+public class ImageBenchmark {
+	
+	/**
+	 * Operation being measured. Results are kept so the work is not
+	 * optimized away.
+	 * @author Weston Berg
+	 */
+	private interface Op {
+		Object run() throws Exception;
+	} // Op
+	
+	private static final long SEED = 42;
+	private final double seconds;
+	private final String filter;
+	private final com.sun.management.ThreadMXBean threads;
+	/**
+	 * Sum of the hash codes of all results, printed so it is used
+	 */
+	private long sink;
+	
+	/**
+	 * @param seconds  Time to measure each benchmark for, half as much is spent warming up
+	 * @param filter  Only benchmarks whose name contains this are run, null for all
+	 */
+	public ImageBenchmark(double seconds, String filter) {
+		this.seconds = seconds;
+		this.filter = filter;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean)bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threads = null;
+		}
+	} // ImageBenchmark
+	
+	/**
+	 * Generates an image of random pixels
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @return  Image with pixels drawn from a seeded generator
+	 */
+	public static ImageProcessor randomImage(int height, int width) {
+		Random rand = new Random(SEED);
+		int[] pixels = new int[height * width];
+		for (int p = 0; p < pixels.length; p++) {
+			pixels[p] = rand.nextInt(1 << 24);
+		}
+		return new ImageProcessor(height, width, pixels);
+	} // randomImage
+	
+	/**
+	 * Generates an image of a smooth gradient crossed by vertical stripes,
+	 * with solid blocks placed by a seeded generator, so that cuts follow
+	 * the low importance regions as in real images
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @return  Image with structured content
+	 */
+	public static ImageProcessor structuredImage(int height, int width) {
+		Random rand = new Random(SEED);
+		int[] pixels = new int[height * width];
+		int r, g, b;
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				r = 255 * j / Math.max(width - 1, 1);
+				g = 255 * i / Math.max(height - 1, 1);
+				b = ((j / 16) % 4 == 0) ? 255 : 64;
+				pixels[i * width + j] = (r << 16) | (g << 8) | b;
+			}
+		}
+		int top, left, h, w, color;
+		for (int n = 0; n < 8; n++) {
+			h = 1 + rand.nextInt(Math.max(height / 4, 1));
+			w = 1 + rand.nextInt(Math.max(width / 4, 1));
+			top = rand.nextInt(height - h + 1);
+			left = rand.nextInt(width - w + 1);
+			color = rand.nextInt(1 << 24);
+			for (int i = top; i < top + h; i++) {
+				for (int j = left; j < left + w; j++) {
+					pixels[i * width + j] = color;
+				}
+			}
+		}
+		return new ImageProcessor(height, width, pixels);
+	} // structuredImage
+	
+	/**
+	 * Runs every benchmark on one image
+	 * @param name  Name of the image content
+	 * @param img  Image to benchmark with
+	 * @throws IOException  If temporary files cannot be written
+	 */
+	public void runAll(String name, ImageProcessor img) throws IOException {
+		int h = img.getHeight();
+		int w = img.getWidth();
+		String label = name + " " + h + "x" + w;
+		File text = File.createTempFile("bench", ".txt");
+		File binary = File.createTempFile("bench", ImageProcessor.BINARY_EXTENSION);
+		File out = File.createTempFile("bench", ImageProcessor.BINARY_EXTENSION);
+		try {
+			img.write(text.getPath());
+			img.write(binary.getPath());
+			ArrayList<ArrayList<Integer>> importance = img.getImportance();
+			WGraph graph = new WGraph(importance);
+			WGraph.SearchContext ctx = graph.newSearchContext();
+			int[] top = new int[2 * w];
+			int[] bottom = new int[2 * w];
+			for (int j = 0; j < w; j++) {
+				top[2 * j] = j;
+				top[2 * j + 1] = 0;
+				bottom[2 * j] = j;
+				bottom[2 * j + 1] = h - 1;
+			}
+			int[] flat = img.getImportanceArray();
+			SeamFinder finder = new SeamFinder();
+			int k = Math.max(w / 10, 1);
+			
+			measure(label, "parse text", () -> new ImageProcessor(text.getPath()));
+			measure(label, "parse binary", () -> new ImageProcessor(binary.getPath()));
+			measure(label, "importance array", () -> img.getImportanceArray());
+			measure(label, "importance lists", () -> img.getImportance());
+			measure(label, "graph build", () -> new WGraph(importance));
+			measure(label, "graph V2V", () -> graph.V2V(ctx, 0, 0, w - 1, h - 1));
+			measure(label, "graph V2S", () -> graph.V2S(ctx, w / 2, 0, bottom));
+			measure(label, "graph S2S", () -> graph.S2S(ctx, top, bottom));
+			measure(label, "seam finder", () -> finder.findVerticalSeam(flat, w, h));
+			measure(label, "writeReduced k=" + k, () -> {
+				img.writeReduced(k, out.getPath());
+				return out;
+			});
+		} finally {
+			text.delete();
+			binary.delete();
+			out.delete();
+		}
+	} // runAll
+	
+	/**
+	 * Warms up then measures an operation, printing time and allocation per operation
+	 * @param label  Image the operation works on
+	 * @param name  Name of the operation
+	 * @param op  Operation to measure
+	 */
+	private void measure(String label, String name, Op op) {
+		if (filter != null && !name.contains(filter)) {
+			return;
+		}
+		try {
+			run(op, (long)(seconds * 0.5e9), 2);
+			long threadId = Thread.currentThread().getId();
+			long allocated = (threads == null) ? 0 : threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			int ops = run(op, (long)(seconds * 1e9), 3);
+			long elapsed = System.nanoTime() - start;
+			String alloc = "n/a";
+			if (threads != null) {
+				allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+				alloc = String.format("%.1f KB/op", allocated / 1024.0 / ops);
+			}
+			System.out.printf("%-22s %-20s %12.3f ms/op %16s  (%d ops)%n",
+							  label, name, elapsed / 1e6 / ops, alloc, ops);
+		} catch (Exception e) {
+			System.out.printf("%-22s %-20s failed: %s%n", label, name, e);
+		}
+	} // measure
+	
+	/**
+	 * Runs an operation until the given time has passed
+	 * @param op  Operation to run
+	 * @param nanos  Time to run for
+	 * @param minOps  Number of times to run at least
+	 * @return  Number of times the operation ran
+	 * @throws Exception  If the operation fails
+	 */
+	private int run(Op op, long nanos, int minOps) throws Exception {
+		long end = System.nanoTime() + nanos;
+		int ops = 0;
+		Object result;
+		do {
+			result = op.run();
+			sink += (result == null) ? 0 : System.identityHashCode(result);
+			ops++;
+		} while (ops < minOps || System.nanoTime() < end);
+		return ops;
+	} // run
+	
+	public static void main(String[] args) throws IOException {
+		double seconds = 2;
+		String filter = null;
+		ArrayList<int[]> sizes = new ArrayList<int[]>();
+		String[] dims;
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("-time") && a + 1 < args.length) {
+				seconds = Double.parseDouble(args[++a]);
+			} else if (args[a].equals("-filter") && a + 1 < args.length) {
+				filter = args[++a];
+			} else {
+				dims = args[a].split("x");
+				sizes.add(new int[] {Integer.parseInt(dims[0]), Integer.parseInt(dims[1])});
+			}
+		}
+		if (sizes.isEmpty()) {
+			sizes.add(new int[] {64, 64});
+			sizes.add(new int[] {512, 512});
+			sizes.add(new int[] {2048, 1024});
+		}
+		ImageBenchmark bench = new ImageBenchmark(seconds, filter);
+		for (int[] size : sizes) {
+			bench.runAll("random", randomImage(size[0], size[1]));
+			bench.runAll("structured", structuredImage(size[0], size[1]));
+		}
+		System.out.println("(checksum " + bench.sink + ")");
+	} // main
+	
+} // ImageBenchmark
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Instrumentation of the phases of reducing an image. Each phase and each
+ * cut removed is emitted as a Java Flight Recorder event, recorded when a
+ * recording enables them (e.g. java -XX:StartFlightRecording ...). Totals per
+ * phase are also kept in memory while enabled, by setEnabled or the
+ * imageresizer.metrics system property, and printed by report.
+ *
+ * When neither is on, a phase costs an event object the JIT can remove and
+ * a check of one flag, so instrumentation can stay in place in production.
+ *
+ * @author Weston Berg
+ */
+public final class ImageMetrics {
+	
+	/**
+	 * Phases of reducing an image
+	 * @author Weston Berg
+	 */
+	public enum Phase {
+		PARSE("parse"),
+		IMPORTANCE("importance"),
+		GRAPH_BUILD("graph build"),
+		SEARCH("cut search"),
+		REMOVE("cut removal"),
+		WRITE("write");
+		
+		private final String label;
+		
+		Phase(String label) {
+			this.label = label;
+		} // Phase
+		
+		@Override
+		public String toString() {
+			return label;
+		} // toString
+	} // Phase
+	
+	/**
+	 * One run of a phase
+	 * @author Weston Berg
+	 */
+	@Name("imageresizer.Phase")
+	@Label("Image Phase")
+	@Category("Image Resizer")
+	@Description("One run of a phase of reducing an image")
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Pixels")
+		long pixels;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		@Label("Nodes Settled")
+		@Description("Graph nodes settled by a graph search, 0 for other phases")
+		long nodesSettled;
+		// Kept for the in-memory totals, not recorded
+		transient Phase key;
+		transient long startNanos;
+	} // PhaseEvent
+	
+	/**
+	 * Removal of one cut
+	 * @author Weston Berg
+	 */
+	@Name("imageresizer.Seam")
+	@Label("Seam Removed")
+	@Category("Image Resizer")
+	@Description("One iteration of finding and removing a minimum cost cut")
+	static final class SeamEvent extends Event {
+		@Label("Iteration")
+		int iteration;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Cost")
+		long cost;
+		@Label("Graph Search")
+		boolean graphSearch;
+	} // SeamEvent
+	
+	private static volatile boolean enabled = Boolean.getBoolean("imageresizer.metrics");
+	private static final int PHASES = Phase.values().length;
+	private static final LongAdder[] count = adders(PHASES);
+	private static final LongAdder[] nanos = adders(PHASES);
+	private static final LongAdder[] pixels = adders(PHASES);
+	private static final LongAdder[] bytes = adders(PHASES);
+	private static final LongAdder[] settled = adders(PHASES);
+	private static final LongAdder seams = new LongAdder();
+	
+	private ImageMetrics() {
+	} // ImageMetrics
+	
+	private static LongAdder[] adders(int n) {
+		LongAdder[] result = new LongAdder[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = new LongAdder();
+		}
+		return result;
+	} // adders
+	
+	/**
+	 * @param on  True to keep totals per phase for report
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	} // setEnabled
+	
+	/**
+	 * @return  Whether totals per phase are being kept
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	} // isEnabled
+	
+	/**
+	 * Starts timing a phase
+	 * @param phase  Phase starting
+	 * @return  Event to pass to end once the phase finishes
+	 */
+	static PhaseEvent begin(Phase phase) {
+		PhaseEvent event = new PhaseEvent();
+		event.key = phase;
+		if (enabled) {
+			event.startNanos = System.nanoTime();
+		}
+		event.begin();
+		return event;
+	} // begin
+	
+	/**
+	 * Finishes timing a phase
+	 * @param event  Event returned by begin
+	 * @param pixelCount  Number of pixels the phase worked on
+	 * @param byteCount  Number of bytes the phase read or wrote
+	 */
+	static void end(PhaseEvent event, long pixelCount, long byteCount) {
+		end(event, pixelCount, byteCount, 0);
+	} // end
+	
+	/**
+	 * Finishes timing a phase
+	 * @param event  Event returned by begin
+	 * @param pixelCount  Number of pixels the phase worked on
+	 * @param byteCount  Number of bytes the phase read or wrote
+	 * @param nodesSettled  Number of graph nodes the phase settled
+	 */
+	static void end(PhaseEvent event, long pixelCount, long byteCount, long nodesSettled) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = event.key.toString();
+			event.pixels = pixelCount;
+			event.bytes = byteCount;
+			event.nodesSettled = nodesSettled;
+			event.commit();
+		}
+		if (enabled) {
+			int p = event.key.ordinal();
+			count[p].increment();
+			// Phases begun before metrics were enabled have no start time
+			if (event.startNanos != 0) {
+				nanos[p].add(System.nanoTime() - event.startNanos);
+			}
+			pixels[p].add(pixelCount);
+			bytes[p].add(byteCount);
+			settled[p].add(nodesSettled);
+		}
+	} // end
+	
+	/**
+	 * Records the removal of one cut
+	 * @param event  Event begun when the iteration started
+	 * @param iteration  Number of cuts removed before this one
+	 * @param width  Width of the image before the cut was removed
+	 * @param height  Height of the image
+	 * @param cost  Sum of the importance of the pixels in the cut
+	 * @param graphSearch  True if the cut was found by a graph search
+	 */
+	static void seamRemoved(SeamEvent event, int iteration, int width, int height, long cost, boolean graphSearch) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.iteration = iteration;
+			event.width = width;
+			event.height = height;
+			event.cost = cost;
+			event.graphSearch = graphSearch;
+			event.commit();
+		}
+		if (enabled) {
+			seams.increment();
+		}
+	} // seamRemoved
+	
+	/**
+	 * Clears the totals kept so far
+	 */
+	public static void reset() {
+		for (int p = 0; p < PHASES; p++) {
+			count[p].reset();
+			nanos[p].reset();
+			pixels[p].reset();
+			bytes[p].reset();
+			settled[p].reset();
+		}
+		seams.reset();
+	} // reset
+	
+	/**
+	 * @return  Table of the totals kept for each phase since the last reset
+	 */
+	public static String report() {
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-12s %8s %12s %10s %14s %12s %14s%n",
+								 "phase", "count", "total ms", "avg ms", "pixels", "MB", "nodes settled"));
+		long n;
+		double ms;
+		for (Phase phase : Phase.values()) {
+			int p = phase.ordinal();
+			n = count[p].sum();
+			if (n == 0) {
+				continue;
+			}
+			ms = nanos[p].sum() / 1e6;
+			out.append(String.format("%-12s %8d %12.1f %10.3f %14d %12.2f %14d%n", phase, n, ms, ms / n,
+									 pixels[p].sum(), bytes[p].sum() / (1024.0 * 1024.0), settled[p].sum()));
+		}
+		out.append("cuts removed: ").append(seams.sum()).append('\n');
+		return out.toString();
+	} // report
+	
+} // ImageMetrics
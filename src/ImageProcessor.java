@@ -9,82 +9,334 @@
  * SOFTWARE.
  */
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class for shrinking images based on pixel
- * importance. 
+ * importance.
  * @author Weston Berg
  */
-public class ImageProcessor {
+public class ImageProcessor implements AutoCloseable {
 	
 	/**
-	 * Class representing a pixel in an image. Pixel's
-	 * identifying info is its RGB format values.
+	 * Extension of files read and written as binary images
+	 */
+	public static final String BINARY_EXTENSION = ".bimg";
+	/**
+	 * First four bytes of a binary image file, "BIMG"
+	 */
+	static final int BINARY_MAGIC = 0x42494D47;
+	static final int BINARY_HEADER_SIZE = 12;
+	/**
+	 * Extension of seam order index files, conventionally written
+	 * next to the image they index
+	 */
+	public static final String SEAM_ORDER_EXTENSION = ".seams";
+	/**
+	 * First four bytes of a seam order index file, "BSEQ"
+	 */
+	private static final int SEAM_ORDER_MAGIC = 0x42534551;
+	private static final int SEAM_ORDER_HEADER_SIZE = 16;
+	static final long MAX_MAP_SIZE = Integer.MAX_VALUE;
+	/**
+	 * Number of pixels each parallel task works on at least
+	 */
+	private static final int PARALLEL_BAND_SIZE = 1 << 15;
+	/**
+	 * Computes importance of the interior columns of each row
+	 */
+	private static final ImportanceKernel KERNEL = ImportanceKernel.INSTANCE;
+	static final int READ_BUFFER_SIZE = 1 << 20;
+	static final int WRITE_BUFFER_SIZE = 1 << 16;
+	/**
+	 * Text of each RGB value followed by a space. Every value takes
+	 * MAX_VALUE_TEXT bytes, the last one holding the text length.
+	 */
+	private static final byte[] VALUE_TEXT;
+	static final int MAX_VALUE_TEXT = 5;
+	static {
+		VALUE_TEXT = new byte[256 * MAX_VALUE_TEXT];
+		byte[] text;
+		for (int v = 0; v < 256; v++) {
+			text = (v + " ").getBytes();
+			System.arraycopy(text, 0, VALUE_TEXT, v * MAX_VALUE_TEXT, text.length);
+			VALUE_TEXT[v * MAX_VALUE_TEXT + MAX_VALUE_TEXT - 1] = (byte)text.length;
+		}
+	}
+	
+	/**
+	 * Helpers for pixels packed into a single int. Pixel's
+	 * identifying info is its RGB format values, stored as
+	 * 0xRRGGBB with each value in the range [0, 255].
 	 * @author Weston Berg
 	 */
-	private class Pixel {
-		private int r, g, b;
+	static final class Pixel {
 		
 		/**
-		 * Constructs a new pixel instance
+		 * Packs RGB values, each in the range [0, 255], into a pixel
 		 * @param R  Red value
 		 * @param G  Green value
 		 * @param B  Blue value
+		 * @return  Packed pixel
 		 */
-		public Pixel(int R, int G, int B) {
-			r = R;
-			g = G;
-			b = B;
-		} // Pixel
+		static int pack(int R, int G, int B) {
+			return (R << 16) | (G << 8) | B;
+		} // pack
 		
-		@Override
-		public String toString() {
-			return "[" + r + "," + g + "," + b + "]";
+		static int r(int p) {
+			return (p >>> 16) & 0xFF;
 		}
-	}
+		
+		static int g(int p) {
+			return (p >>> 8) & 0xFF;
+		}
+		
+		static int b(int p) {
+			return p & 0xFF;
+		}
+		
+		static String toString(int p) {
+			return "[" + r(p) + "," + g(p) + "," + b(p) + "]";
+		}
+	} // Pixel
+	
+	/**
+	 * Reads whitespace separated ints from a stream through a
+	 * byte buffer, without creating a String per line or value.
+	 * @author Weston Berg
+	 */
+	static final class IntTokenizer {
+		private final InputStream in;
+		private final byte[] buf;
+		private int pos, limit;
+		
+		/**
+		 * @param in  Stream to read from
+		 * @param buf  Buffer to read through
+		 */
+		IntTokenizer(InputStream in, byte[] buf) {
+			this.in = in;
+			this.buf = buf;
+			this.pos = 0;
+			this.limit = 0;
+		} // IntTokenizer
+		
+		/**
+		 * @return  Next byte of the stream from 0 to 255, -1 at end of stream
+		 * @throws IOException  If stream cannot be read
+		 */
+		private int read() throws IOException {
+			if (pos == limit) {
+				limit = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buf[pos++] & 0xFF;
+		} // read
+		
+		/**
+		 * @return  True if anything other than whitespace is left in the stream
+		 * @throws IOException  If stream cannot be read
+		 */
+		boolean hasNext() throws IOException {
+			int c = read();
+			while (c >= 0 && c <= ' ') {  // Skip whitespace
+				c = read();
+			}
+			if (c < 0) {
+				return false;
+			}
+			pos--;  // Leave the byte for nextInt
+			return true;
+		} // hasNext
+		
+		/**
+		 * @return  Next int in the stream
+		 * @throws IOException  If stream ends or holds something other than an int
+		 * @throws NumberFormatException  If the value does not fit in an int
+		 */
+		int nextInt() throws IOException {
+			int c = read();
+			while (c >= 0 && c <= ' ') {  // Skip whitespace
+				c = read();
+			}
+			if (c < 0) {
+				throw new EOFException("Unexpected end of file");
+			}
+			boolean negative = (c == '-');
+			if (negative) {
+				c = read();
+			}
+			if (c < '0' || c > '9') {
+				throw new IOException("Unexpected character '" + (char)c + "'");
+			}
+			long max = negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE;
+			long value = 0;
+			do {
+				value = value * 10 + (c - '0');
+				if (value > max) {
+					throw new NumberFormatException("Value out of range for an int");
+				}
+				c = read();
+			} while (c >= '0' && c <= '9');
+			if (c > ' ') {
+				throw new IOException("Unexpected character '" + (char)c + "'");
+			}
+			return (int)(negative ? -value : value);
+		} // nextInt
+		
+		/**
+		 * @param row  Row of the pixel the value belongs to, named in the error
+		 * @return  Next int in the stream, a color value in the range [0, 255]
+		 * @throws IOException  If stream ends or holds something other than a color value
+		 */
+		int nextChannel(int row) throws IOException {
+			int value = nextInt();
+			if (value < 0 || value > 255) {
+				throw new IOException("Row " + row + " has color value " + value + " outside [0, 255]");
+			}
+			return value;
+		} // nextChannel
+	} // IntTokenizer
+	
+	/**
+	 * Pixels accessed a row at a time, so the readers and writers
+	 * also work on images that are not held in an array
+	 * @author Weston Berg
+	 */
+	interface PixelRows {
+		/**
+		 * @param i  Row to copy
+		 * @param row  Array to copy the first row.length pixels of the row to
+		 */
+		void getRow(int i, int[] row);
+		
+		/**
+		 * @param i  Row to overwrite
+		 * @param row  Pixels to copy to the start of the row
+		 */
+		void putRow(int i, int[] row);
+	} // PixelRows
 	
 	private int imgH;
 	private int imgW;
-	private List<ArrayList<Pixel>> imgMatrix;
+	/**
+	 * Distance between the starts of two rows in imgPixels. Only
+	 * differs from imgW while seams are being removed.
+	 */
+	private int imgStride;
+	/**
+	 * Packed pixels of the image stored row by row
+	 */
+	private int[] imgPixels;
+	/**
+	 * Buffer the rows are compacted into while cuts are removed, kept
+	 * between reductions so the loaded pixels are never copied or changed
+	 */
+	private int[] carvePixels;
+	/**
+	 * While writing a seam order index, the column each pixel had
+	 * before carving, shifted along with the pixels. Null otherwise.
+	 */
+	private int[] carveColumns;
+	/**
+	 * While writing a seam order index, the cut each pixel was removed
+	 * by, counting from 1, or 0 if it is kept. Null otherwise.
+	 */
+	private int[] removalOrder;
+	/**
+	 * Whether minimum cuts are found by building a WGraph and running
+	 * S2S instead of using the seam finder. Both find cuts of the same
+	 * cost, but may pick different ones of several equal cost cuts.
+	 */
+	private boolean useGraphSearch;
+	/**
+	 * Whether importance is kept across cuts in writeReduced and only
+	 * recomputed next to each removed cut
+	 */
+	private boolean incrementalImportance;
+	/**
+	 * Number of cuts removed per importance computation, 1 for exact cuts
+	 */
+	private int seamBatchSize;
+	/**
+	 * Sum of the importance of all pixels removed by the last reduction
+	 */
+	private long removedEnergy;
+	/**
+	 * Pool computing importance and cut costs in parallel, null when single threaded
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * True if pool was created by setParallelism and is shut down by this processor
+	 */
+	private boolean ownsPool;
+	/**
+	 * Rows of imgPixels, for the readers and writers
+	 */
+	private final PixelRows rows = new PixelRows() {
+		
+		@Override
+		public void getRow(int i, int[] row) {
+			System.arraycopy(imgPixels, i * imgStride, row, 0, row.length);
+		}
+		
+		@Override
+		public void putRow(int i, int[] row) {
+			System.arraycopy(row, 0, imgPixels, i * imgStride, row.length);
+		}
+	};
 	
 	/**
 	 * Construct matrix representing each pixel in
 	 * an image and the RGB values of those pixels.
+	 * Files ending in BINARY_EXTENSION are read as binary
+	 * images, all others as text.
 	 * @param FName  Filename of file containing pixel info
 	 */
 	public ImageProcessor(String FName) {
-		try (BufferedReader br = new BufferedReader(new FileReader(FName))) {  // Open file for reading
-			String line;
-			String[] spltLine;
-			int i, r, g, b;
-			
-			if ((line = br.readLine()) != null) {  // Read image height
-				imgH = Integer.parseUnsignedInt(line);
-			}
-			if ((line = br.readLine()) != null) {  // Read image width
-				imgW = Integer.parseUnsignedInt(line);
-			}
-			imgMatrix = new ArrayList<ArrayList<Pixel>>(imgH);
-			
-			i = 0;
-			while ((line = br.readLine()) != null) {  // Read in pixel info
-				imgMatrix.add(new ArrayList<Pixel>(imgW));
-				spltLine = line.trim().split(" +");
-				for (int index = 0; index < spltLine.length; index+=3) {
-					r = Integer.parseInt(spltLine[index]);
-					g = Integer.parseInt(spltLine[index+1]);
-					b = Integer.parseInt(spltLine[index+2]);
-					imgMatrix.get(i).add(new Pixel(r, g, b));
-				}
-				i++;
+		this(FName, FName.endsWith(BINARY_EXTENSION));
+	} // ImageProcessor
+	
+	/**
+	 * Construct matrix representing each pixel in
+	 * an image and the RGB values of those pixels.
+	 * @param FName  Filename of file containing pixel info
+	 * @param binary  True if file is in binary format, false if text
+	 */
+	public ImageProcessor(String FName, boolean binary) {
+		this();
+		try {
+			if (binary) {
+				readBinary(FName);
+			} else {
+				readText(FName);
 			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -93,18 +345,219 @@ public class ImageProcessor {
 		}
 	} // ImageProcessor
 	
+	/**
+	 * Reads an image, reporting failures to the caller instead of
+	 * printing them. Files ending in BINARY_EXTENSION are read as
+	 * binary images, all others as text.
+	 * @param FName  Filename of file containing pixel info
+	 * @return  Image read from the file
+	 * @throws IOException  If file cannot be read
+	 */
+	public static ImageProcessor read(String FName) throws IOException {
+		ImageProcessor img = new ImageProcessor();
+		if (FName.endsWith(BINARY_EXTENSION)) {
+			img.readBinary(FName);
+		} else {
+			img.readText(FName);
+		}
+		return img;
+	} // read
+	
+	/**
+	 * Reads only the height and width of an image file
+	 * @param FName  Filename of file containing pixel info
+	 * @return  Array holding the height then the width of the image
+	 * @throws IOException  If file cannot be read
+	 */
+	public static int[] readDimensions(String FName) throws IOException {
+		try (InputStream in = new FileInputStream(FName)) {
+			if (FName.endsWith(BINARY_EXTENSION)) {
+				DataInputStream data = new DataInputStream(in);
+				if (data.readInt() != BINARY_MAGIC) {
+					throw new IOException(FName + " is not a binary image file");
+				}
+				return new int[] {data.readInt(), data.readInt()};
+			}
+			IntTokenizer tok = new IntTokenizer(in, new byte[64]);
+			return new int[] {tok.nextInt(), tok.nextInt()};
+		}
+	} // readDimensions
+	
+	/**
+	 * Construct image from pixels already in memory
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @param pixels  Pixels stored row by row, each packed as 0xRRGGBB.
+	 				  Used as the backing array of the image.
+	 */
+	public ImageProcessor(int height, int width, int[] pixels) {
+		this();
+		if (pixels.length < height * width) {
+			throw new IllegalArgumentException("Expected " + (height * width) + " pixels, got " + pixels.length);
+		}
+		imgH = height;
+		imgW = width;
+		imgStride = width;
+		imgPixels = pixels;
+	} // ImageProcessor
+	
+	/**
+	 * Constructs an empty image to be filled by one of the readers
+	 */
+	private ImageProcessor() {
+		incrementalImportance = true;
+		seamBatchSize = 1;
+	} // ImageProcessor
+	
+	/**
+	 * Reads image from a text file. First line holds the height,
+	 * second line the width, then each line holds the RGB values
+	 * of one row of pixels separated by spaces.
+	 * @param FName  Filename of file containing pixel info
+	 * @throws IOException  If file cannot be read
+	 */
+	private void readText(String FName) throws IOException {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.PARSE);
+		try (InputStream in = new FileInputStream(FName)) {  // Open file for reading
+			IntTokenizer tok = new IntTokenizer(in, new byte[READ_BUFFER_SIZE]);
+			
+			imgH = tok.nextInt();  // Read image height
+			imgW = tok.nextInt();  // Read image width
+			if (imgH < 0 || imgW < 0) {
+				throw new IOException(FName + " has an invalid header");
+			}
+			imgStride = imgW;
+			imgPixels = new int[imgH * imgW];
+			readTextRows(tok, imgH, imgW, rows);
+		}
+		ImageMetrics.end(phase, (long)imgH * imgW, new File(FName).length());
+	} // readText
+	
+	/**
+	 * Reads the pixels of a text image following its header
+	 * @param tok  Tokenizer positioned after the height and width
+	 * @param height  Number of rows to read
+	 * @param width  Number of pixels per row
+	 * @param rows  Rows to store the pixels in
+	 * @throws IOException  If the pixels cannot be read or a color value is
+	 						outside [0, 255]
+	 */
+	static void readTextRows(IntTokenizer tok, int height, int width, PixelRows rows) throws IOException {
+		int[] row = new int[width];
+		int r, g, b;
+		for (int i = 0; i < height; i++) {  // Read in pixel info
+			for (int j = 0; j < width; j++) {
+				r = tok.nextChannel(i);
+				g = tok.nextChannel(i);
+				b = tok.nextChannel(i);
+				row[j] = Pixel.pack(r, g, b);
+			}
+			rows.putRow(i, row);
+		}
+	} // readTextRows
+	
+	/**
+	 * Reads image from a binary file by memory mapping it. The file starts
+	 * with BINARY_MAGIC, the height and the width as big-endian ints, then
+	 * holds three bytes (red, green, blue) per pixel row by row.
+	 * @param FName  Filename of file containing pixel info
+	 * @throws IOException  If file cannot be read or is not a binary image
+	 */
+	private void readBinary(String FName) throws IOException {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.PARSE);
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (fc.read(header) < 0) {
+					break;
+				}
+			}
+			header.flip();
+			if (header.remaining() < BINARY_HEADER_SIZE || header.getInt() != BINARY_MAGIC) {
+				throw new IOException(FName + " is not a binary image file");
+			}
+			imgH = header.getInt();
+			imgW = header.getInt();
+			long rowBytes = 3L * imgW;
+			if (imgH < 0 || imgW < 0 || fc.size() < BINARY_HEADER_SIZE + rowBytes * imgH) {
+				throw new IOException(FName + " is truncated or has an invalid header");
+			}
+			imgStride = imgW;
+			imgPixels = new int[imgH * imgW];
+			readBinaryRows(fc, imgH, imgW, rows);
+		}
+		ImageMetrics.end(phase, (long)imgH * imgW, BINARY_HEADER_SIZE + 3L * imgH * imgW);
+	} // readBinary
+	
+	/**
+	 * Reads the pixels of a binary image by memory mapping whole rows
+	 * at a time, since a single mapping is limited to 2GB
+	 * @param fc  Channel of a binary image already checked to hold all rows
+	 * @param height  Number of rows to read
+	 * @param width  Number of pixels per row
+	 * @param rows  Rows to store the pixels in
+	 * @throws IOException  If the file cannot be mapped
+	 */
+	static void readBinaryRows(FileChannel fc, int height, int width, PixelRows rows) throws IOException {
+		long rowBytes = 3L * width;
+		int rowsPerMap = (int)Math.min(height, MAX_MAP_SIZE / Math.max(rowBytes, 1));
+		byte[] rowBuf = new byte[(int)rowBytes];
+		int[] row = new int[width];
+		MappedByteBuffer mapped;
+		int count, pos, b;
+		for (int i = 0; i < height; i += rowsPerMap) {
+			count = Math.min(rowsPerMap, height - i);
+			mapped = fc.map(MapMode.READ_ONLY, BINARY_HEADER_SIZE + rowBytes * i, rowBytes * count);
+			for (int r = 0; r < count; r++) {
+				mapped.get(rowBuf);
+				pos = 0;
+				for (b = 0; b < rowBuf.length; b += 3) {
+					row[pos++] = Pixel.pack(rowBuf[b] & 0xFF, rowBuf[b+1] & 0xFF, rowBuf[b+2] & 0xFF);
+				}
+				rows.putRow(i + r, row);
+			}
+		}
+	} // readBinaryRows
+	
+	/**
+	 * @return  Height of the image in pixels
+	 */
+	public int getHeight() {
+		return imgH;
+	} // getHeight
+	
+	/**
+	 * @return  Width of the image in pixels
+	 */
+	public int getWidth() {
+		return imgW;
+	} // getWidth
+	
+	/**
+	 * Pixels of the image stored row by row, each packed as 0xRRGGBB.
+	 * The pixel at row i, column j is at index i * getWidth() + j.
+	 * Changes to the returned array are reflected in the image.
+	 * @return  Backing array of the image
+	 */
+	public int[] getPixels() {
+		return imgPixels;
+	} // getPixels
+	
 	/**
 	 * Computes Euclidean-like distance between two
 	 * pixels based on their RGB values.
-	 * @param p  A pixel
-	 * @param q  A pixel
+	 * @param p  A packed pixel
+	 * @param q  A packed pixel
 	 * @return  Return 'distance' between given pixels
 	 */
-	private int computePDist(Pixel p, Pixel q) {
-		int res;
-		res = (int)Math.pow((p.r - q.r), 2);
-		res += (int)Math.pow((p.g - q.g), 2);
-		res += (int)Math.pow((p.b - q.b), 2);
+	static int computePDist(int p, int q) {
+		int d, res;
+		d = Pixel.r(p) - Pixel.r(q);
+		res = d * d;
+		d = Pixel.g(p) - Pixel.g(q);
+		res += d * d;
+		d = Pixel.b(p) - Pixel.b(q);
+		res += d * d;
 		return res;
 	} // computePDist
 	
@@ -115,13 +568,10 @@ public class ImageProcessor {
 	 * @return  XImportance of pixel at given position in matrix
 	 */
 	private int computeXImportance(int i, int j) {
-		if (j == 0) {
-			return computePDist(imgMatrix.get(i).get(imgW-1), imgMatrix.get(i).get(j+1));
-		} else if (j == (imgW-1)) {
-			return computePDist(imgMatrix.get(i).get(j-1), imgMatrix.get(i).get(0));
-		} else {
-			return computePDist(imgMatrix.get(i).get(j-1), imgMatrix.get(i).get(j+1));
-		}
+		int row = i * imgStride;
+		int left = (j == 0) ? imgW-1 : j-1;
+		int right = (j == (imgW-1)) ? 0 : j+1;
+		return computePDist(imgPixels[row + left], imgPixels[row + right]);
 	} // computeXImportance
 	
 	/**
@@ -131,15 +581,110 @@ public class ImageProcessor {
 	 * @return  YImportance of pixel at given position in matrix
 	 */
 	private int computeYImportance(int i, int j) {
-		if (i == 0) {
-			return computePDist(imgMatrix.get(imgH-1).get(j), imgMatrix.get(i+1).get(j));
-		} else if (i == (imgH-1)) {
-			return computePDist(imgMatrix.get(i-1).get(j), imgMatrix.get(0).get(j));
+		int up = (i == 0) ? imgH-1 : i-1;
+		int down = (i == (imgH-1)) ? 0 : i+1;
+		return computePDist(imgPixels[up * imgStride + j], imgPixels[down * imgStride + j]);
+	} // computeYImportance
+	
+	/**
+	 * Computes the importance of the given pixel
+	 * @param i  Row index of pixel in image matrix to compute importance for
+	 * @param j  Column index of pixel in image matrix to compute importance for
+	 * @return  Importance of pixel at given position in matrix
+	 */
+	private int computePixelImportance(int i, int j) {
+		return computeXImportance(i, j) + computeYImportance(i, j);
+	} // computePixelImportance
+	
+	/**
+	 * Computes the importance of every pixel into the given array,
+	 * using the same row stride as the image. Rows are split into
+	 * bands computed on the pool if parallelism is enabled.
+	 * @param impMatrix  Array of at least imgH * imgStride entries
+	 */
+	private void computeImportance(int[] impMatrix) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.IMPORTANCE);
+		if (pool != null && (long)imgH * imgW >= 2L * PARALLEL_BAND_SIZE) {
+			pool.invoke(new ImportanceTask(impMatrix, 0, imgH, Math.max(1, PARALLEL_BAND_SIZE / Math.max(imgW, 1))));
 		} else {
-			return computePDist(imgMatrix.get(i-1).get(j), imgMatrix.get(i+1).get(j));
+			computeImportance(impMatrix, 0, imgH);
 		}
-	} // computeYImportance
-
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+	} // computeImportance
+	
+	/**
+	 * Computes the importance of every pixel in a band of rows
+	 * @param impMatrix  Array of at least imgH * imgStride entries
+	 * @param from  First row of band
+	 * @param to  Row after the last row of band
+	 */
+	private void computeImportance(int[] impMatrix, int from, int to) {
+		int up, row, down, last;
+		last = imgW - 1;
+		for (int i = from; i < to; i++) {
+			row = i * imgStride;
+			up = ((i == 0) ? imgH - 1 : i - 1) * imgStride;
+			down = ((i == imgH - 1) ? 0 : i + 1) * imgStride;
+			if (imgW == 1) {
+				impMatrix[row] = computePixelImportance(i, 0);
+				continue;
+			}
+			// Columns wrapping around the edges
+			impMatrix[row] = computePDist(imgPixels[row + last], imgPixels[row + 1])
+						   + computePDist(imgPixels[up], imgPixels[down]);
+			impMatrix[row + last] = computePDist(imgPixels[row + last - 1], imgPixels[row])
+								  + computePDist(imgPixels[up + last], imgPixels[down + last]);
+			// Interior columns
+			KERNEL.computeRow(imgPixels, row, up, down, 1, last, impMatrix);
+		}
+	} // computeImportance
+	
+	/**
+	 * Task computing the importance of a band of rows, splitting
+	 * it in half until bands are small enough
+	 * @author Weston Berg
+	 */
+	private class ImportanceTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] impMatrix;
+		private final int from, to, grain;
+		
+		/**
+		 * @param impMatrix  Array to write importance to
+		 * @param from  First row of band
+		 * @param to  Row after the last row of band
+		 * @param grain  Number of rows below which the band is not split
+		 */
+		ImportanceTask(int[] impMatrix, int from, int to, int grain) {
+			this.impMatrix = impMatrix;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		} // ImportanceTask
+		
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				computeImportance(impMatrix, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ImportanceTask(impMatrix, from, mid, grain),
+						  new ImportanceTask(impMatrix, mid, to, grain));
+			}
+		} // compute
+	} // ImportanceTask
+	
+	/**
+	 * Compute the importance matrix 'I' as a flat array
+	 * @return  Array where the entry at index i * getWidth() + j
+	 			corresponds to the importance of pixel at indices i, j
+	 */
+	public int[] getImportanceArray() {
+		int[] impMatrix = new int[imgH * imgStride];
+		computeImportance(impMatrix);
+		return impMatrix;
+	} // getImportanceArray
+	
 	/**
 	 * Compute the importance matrix 'I'
 	 * @return  2D matrix where where each entry at indices i, j in I
@@ -147,98 +692,1277 @@ public class ImageProcessor {
 	 			in imgMatrix.
 	 */
 	public ArrayList<ArrayList<Integer>> getImportance() {
+		return toMatrix(getImportanceArray());
+	} // getImportance
+	
+	/**
+	 * @param flatImportance  Importance of each pixel using the row stride of the image
+	 * @return  2D matrix of the given importance values
+	 */
+	private ArrayList<ArrayList<Integer>> toMatrix(int[] flatImportance) {
 		// Instantiate importance matrix
 		ArrayList<ArrayList<Integer>> impMatrix = new ArrayList<ArrayList<Integer>>(imgH);
-		// Compute importance of each pixel
-		int curImportance;
 		for (int i = 0; i < imgH; i++) {
 			impMatrix.add(new ArrayList<Integer>(imgW));
 			for (int j = 0; j < imgW; j++) {
-				curImportance = computeXImportance(i, j) + computeYImportance(i, j);
-				impMatrix.get(i).add(j, curImportance);
+				impMatrix.get(i).add(j, flatImportance[i * imgStride + j]);
 			}
 		}
 		return impMatrix;
-	} // getImportance
+	} // toMatrix
+	
+	/**
+	 * @param flatImportance  Importance of each pixel using the row stride of the image
+	 * @return  2D matrix holding column j of the given importance values as its row j
+	 */
+	private ArrayList<ArrayList<Integer>> toColumnMatrix(int[] flatImportance) {
+		ArrayList<ArrayList<Integer>> impMatrix = new ArrayList<ArrayList<Integer>>(imgW);
+		for (int j = 0; j < imgW; j++) {
+			impMatrix.add(new ArrayList<Integer>(imgH));
+			for (int i = 0; i < imgH; i++) {
+				impMatrix.get(j).add(i, flatImportance[i * imgStride + j]);
+			}
+		}
+		return impMatrix;
+	} // toColumnMatrix
+	
+	/**
+	 * Select how minimum cost vertical cuts are found by writeReduced
+	 * @param useGraphSearch  True to build a WGraph for every cut and search it
+	 						  with S2S, false to use the seam finder (default)
+	 */
+	public void setGraphSearch(boolean useGraphSearch) {
+		this.useGraphSearch = useGraphSearch;
+	} // setGraphSearch
+	
+	/**
+	 * Select whether writeReduced recomputes the importance of every pixel
+	 * for every cut or only of the pixels next to the previous cut
+	 * @param incrementalImportance  True to only update pixels next to removed
+	 								 cuts (default), false to recompute all pixels
+	 */
+	public void setIncrementalImportance(boolean incrementalImportance) {
+		this.incrementalImportance = incrementalImportance;
+	} // setIncrementalImportance
+	
+	/**
+	 * Select how many cuts writeReduced removes per importance computation.
+	 * Cuts after the first of a batch are only close to minimal, trading
+	 * quality for speed. Importance is recomputed in full for every batch.
+	 * Ignored when graph search is used.
+	 * @param batchSize  Number of cuts per batch, 1 for exact cuts (default)
+	 */
+	public void setSeamBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+		}
+		seamBatchSize = batchSize;
+	} // setSeamBatchSize
+	
+	/**
+	 * @return  Sum of the importance of the pixels removed by the most recent
+	 			writeReduced or reduce, each taken from the importance matrix
+	 			its cut was found in
+	 */
+	public long getRemovedEnergy() {
+		return removedEnergy;
+	} // getRemovedEnergy
+	
+	/**
+	 * Sets the number of threads used to compute importance and the
+	 * cumulative cut costs of wide images. The threads belong to a pool
+	 * of this processor, shut down by close or the next call of
+	 * setParallelism or setPool. When many images are processed, share
+	 * one pool through setPool instead.
+	 * @param threads  Number of threads, 1 to compute on the calling thread only
+	 */
+	public void setParallelism(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+		}
+		releasePool();
+		if (threads > 1) {
+			pool = new ForkJoinPool(threads);
+			ownsPool = true;
+		}
+	} // setParallelism
+	
+	/**
+	 * Computes importance and the cumulative cut costs of wide images on a
+	 * pool owned by the caller, e.g. ForkJoinPool.commonPool(), which can be
+	 * shared by any number of processors. The pool is never shut down here.
+	 * @param pool  Pool to compute on, null to compute on the calling thread only
+	 */
+	public void setPool(ForkJoinPool pool) {
+		releasePool();
+		this.pool = pool;
+	} // setPool
+	
+	/**
+	 * Shuts down the pool created by setParallelism, if any. The image
+	 * can still be used afterwards, computing on the calling thread.
+	 */
+	@Override
+	public void close() {
+		releasePool();
+	} // close
+	
+	/**
+	 * Stops using the current pool, shutting it down if this processor created it
+	 */
+	private void releasePool() {
+		if (pool != null && ownsPool) {
+			pool.shutdown();
+		}
+		pool = null;
+		ownsPool = false;
+	} // releasePool
+	
+	/**
+	 * @return  Number of threads used to compute importance and cut costs
+	 */
+	public int getParallelism() {
+		return (pool == null) ? 1 : pool.getParallelism();
+	} // getParallelism
+	
+	/**
+	 * @return  Buffer to compact rows into, the loaded pixels are read
+	 * 			from and compacted into it by the first removal
+	 */
+	private int[] carveTarget() {
+		if (carvePixels == null || carvePixels.length < imgH * imgStride) {
+			carvePixels = new int[imgH * imgStride];
+		}
+		return carvePixels;
+	} // carveTarget
+	
+	/**
+	 * Removes one pixel from every row, shifting the rest of the row left
+	 * @param seam  Column of pixel to remove for each row
+	 * @param importance  Importance matrix to shift along with the pixels, may be null
+	 */
+	private void removeSeam(int[] seam, int[] importance) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.REMOVE);
+		int[] dst = carveTarget();
+		int row, len;
+		for (int i = 0; i < imgH; i++) {
+			row = i * imgStride + seam[i];
+			len = imgW - seam[i] - 1;
+			if (dst != imgPixels) {
+				System.arraycopy(imgPixels, i * imgStride, dst, i * imgStride, seam[i]);
+			}
+			System.arraycopy(imgPixels, row + 1, dst, row, len);
+			if (importance != null) {
+				System.arraycopy(importance, row + 1, importance, row, len);
+			}
+			if (carveColumns != null) {
+				// imgStride - imgW cuts have been removed so far
+				removalOrder[i * imgStride + carveColumns[row]] = imgStride - imgW + 1;
+				System.arraycopy(carveColumns, row + 1, carveColumns, row, len);
+			}
+		}
+		imgPixels = dst;
+		imgW--;
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+	} // removeSeam
+	
+	/**
+	 * Removes several pixels from every row, shifting the rest of the row left
+	 * @param seams  Cuts to remove, sharing no pixel
+	 * @param count  Number of cuts in seams to remove
+	 * @param cols  Scratch array of at least count entries
+	 */
+	private void removeSeams(int[][] seams, int count, int[] cols) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.REMOVE);
+		int[] target = carveTarget();
+		int row, dst, from, to;
+		for (int i = 0; i < imgH; i++) {
+			row = i * imgStride;
+			for (int s = 0; s < count; s++) {
+				cols[s] = seams[s][i];
+				if (carveColumns != null) {
+					removalOrder[row + carveColumns[row + cols[s]]] = imgStride - imgW + s + 1;
+				}
+			}
+			Arrays.sort(cols, 0, count);
+			// Move each run of kept pixels left past the pixels removed so far
+			dst = cols[0];
+			if (target != imgPixels) {
+				System.arraycopy(imgPixels, row, target, row, dst);
+			}
+			for (int s = 0; s < count; s++) {
+				from = cols[s] + 1;
+				to = (s + 1 < count) ? cols[s + 1] : imgW;
+				System.arraycopy(imgPixels, row + from, target, row + dst, to - from);
+				if (carveColumns != null) {
+					System.arraycopy(carveColumns, row + from, carveColumns, row + dst, to - from);
+				}
+				dst += to - from;
+			}
+		}
+		imgPixels = target;
+		imgW -= count;
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+	} // removeSeams
+	
+	/**
+	 * Recomputes the importance of pixels affected by removing a cut. A pixel's
+	 * XImportance changes if it was next to the cut, its YImportance changes if
+	 * the rows above or below it lost a pixel on the other side of it than its
+	 * own row did. The first and last columns neighbor each other so are always
+	 * recomputed.
+	 * @param importance  Importance matrix already shifted by removeSeam
+	 * @param seam  Column of pixel removed from each row
+	 * @param impLo  Set to the first recomputed column of each row, excluding the edges
+	 * @param impHi  Set to the last recomputed column of each row, excluding the edges
+	 */
+	private void updateImportance(int[] importance, int[] seam, int[] impLo, int[] impHi) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.IMPORTANCE);
+		long updated = 0;
+		int up, down, lo, hi, row;
+		int last = imgW - 1;
+		for (int i = 0; i < imgH; i++) {
+			up = seam[(i == 0) ? imgH - 1 : i - 1];
+			down = seam[(i == imgH - 1) ? 0 : i + 1];
+			lo = Math.max(Math.min(seam[i], Math.min(up, down)) - 1, 0);
+			hi = Math.min(Math.max(seam[i], Math.max(up, down)), last);
+			row = i * imgStride;
+			for (int j = lo; j <= hi; j++) {
+				importance[row + j] = computePixelImportance(i, j);
+			}
+			importance[row] = computePixelImportance(i, 0);
+			importance[row + last] = computePixelImportance(i, last);
+			impLo[i] = lo;
+			impHi[i] = hi;
+			updated += hi - lo + 3;
+		}
+		ImageMetrics.end(phase, updated, 0);
+	} // updateImportance
 	
 	/**
 	 * Compute the new image matrix after reducing the width by k
      * Result written to file named FName in the same format as
-     * the input image matrix.
+     * the input image matrix. Filenames ending in BINARY_EXTENSION
+     * are written as binary images, all others as text.
 	 * @param k  Number of pixels to reduce image width by
 	 * @param FName  Filename to write modified image pixel data to
 	 */
 	public void writeReduced(int k, String FName) {
-		/*
-		if ((imgW - k) < 2) {
-			throw new IllegalArgumentException("Invalid reduction amount. Image must have pixel width greater than 1 after reduction.");
-		}
-		*/
-		ArrayList<ArrayList<Integer>> importance;
-		ArrayList<Integer> s1, s2, minCut;
-		WGraph pixelG;
-		int lastRow = imgH - 1;
-		// Copy image matrix to prevent changing original
+		writeReduced(k, FName, FName.endsWith(BINARY_EXTENSION));
+	} // writeReduced
+	
+	/**
+	 * Compute the new image matrix after reducing the width by k
+     * Result written to file named FName.
+	 * @param k  Number of pixels to reduce image width by
+	 * @param FName  Filename to write modified image pixel data to
+	 * @param binary  True to write a binary image, false to write text
+	 */
+	public void writeReduced(int k, String FName, boolean binary) {
+		// Cuts are removed into carvePixels, leaving the original untouched
+		int originalW = imgW;
+		int[] originalPixels = imgPixels;
+		try {
+			carve(k);
+			// Write result
+			write(FName, binary);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			// Restore ImageProcessor object back to original state before reduction
+			imgW = originalW;
+			imgPixels = originalPixels;
+		}
+	} // writeReduced
+	
+	/**
+	 * Compute the new image matrix after reducing the width by k.
+	 * This image is left unchanged.
+	 * @param k  Number of pixels to reduce image width by
+	 * @return  New image holding the reduced image matrix
+	 */
+	public ImageProcessor reduce(int k) {
+		// Cuts are removed into carvePixels, leaving the original untouched
+		int originalW = imgW;
+		int[] originalPixels = imgPixels;
+		try {
+			carve(k);
+			return new ImageProcessor(imgH, imgW, compactPixels());
+		} finally {
+			// Restore ImageProcessor object back to original state before reduction
+			imgW = originalW;
+			imgPixels = originalPixels;
+		}
+	} // reduce
+	
+	/**
+	 * Compute the new image matrix after reducing the height by k
+	 * Result written to file named FName. Filenames ending in
+	 * BINARY_EXTENSION are written as binary images, all others as text.
+	 * @param k  Number of pixels to reduce image height by
+	 * @param FName  Filename to write modified image pixel data to
+	 */
+	public void writeReducedHeight(int k, String FName) {
+		writeResized(imgW, imgH - k, FName);
+	} // writeReducedHeight
+	
+	/**
+	 * Compute the new image matrix after reducing it to the given size
+	 * Result written to file named FName. Filenames ending in
+	 * BINARY_EXTENSION are written as binary images, all others as text.
+	 * @param width  Width to reduce the image to
+	 * @param height  Height to reduce the image to
+	 * @param FName  Filename to write modified image pixel data to
+	 * @see #resize(int, int)
+	 */
+	public void writeResized(int width, int height, String FName) {
+		int originalW = imgW;
+		int originalH = imgH;
+		int[] originalPixels = imgPixels;
+		try {
+			carve(imgW - width, imgH - height);
+			write(FName);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			// Restore ImageProcessor object back to original state before reduction
+			imgW = originalW;
+			imgH = originalH;
+			imgPixels = originalPixels;
+		}
+	} // writeResized
+	
+	/**
+	 * Compute the new image matrix after reducing it to the given size.
+	 * When only the width changes this is the same as reduce. Otherwise
+	 * each step removes whichever of the minimum cost vertical and
+	 * horizontal cuts is cheaper, preferring the vertical cut on ties.
+	 * Horizontal cuts are found by walking the columns of the importance
+	 * through the row stride, nothing is transposed. Graph search,
+	 * incremental importance and seam batches apply as they do to
+	 * reduce. This image is left unchanged.
+	 * @param width  Width to reduce the image to, between 1 and the current width
+	 * @param height  Height to reduce the image to, between 1 and the current height
+	 * @return  New image holding the reduced image matrix
+	 */
+	public ImageProcessor resize(int width, int height) {
+		int originalW = imgW;
+		int originalH = imgH;
+		int[] originalPixels = imgPixels;
+		try {
+			carve(imgW - width, imgH - height);
+			return new ImageProcessor(imgH, imgW, compactPixels());
+		} finally {
+			// Restore ImageProcessor object back to original state before reduction
+			imgW = originalW;
+			imgH = originalH;
+			imgPixels = originalPixels;
+		}
+	} // resize
+	
+	/**
+	 * Writes several reductions of the image in one pass. Cuts are removed
+	 * up to the largest reduction, and each file is written as the image
+	 * reaches its width, so the work is that of the largest reduction alone.
+	 * Files are written on a background thread while carving continues.
+	 * Filenames ending in BINARY_EXTENSION are written as binary images,
+	 * all others as text. This image is left unchanged.
+	 * @param ks  Numbers of pixels to reduce image width by, in ascending order
+	 * @param FNames  Filename to write each reduction to
+	 * @throws IOException  If a file cannot be written, once every write has
+	 						finished. Failures of further files are suppressed in it.
+	 */
+	public void writeReduced(int[] ks, String[] FNames) throws IOException {
+		if (ks.length != FNames.length) {
+			throw new IllegalArgumentException("Expected " + ks.length + " filenames, got " + FNames.length);
+		}
+		for (int t = 1; t < ks.length; t++) {
+			if (ks[t] < ks[t-1]) {
+				throw new IllegalArgumentException("Reductions must be in ascending order");
+			}
+		}
 		int originalW = imgW;
-		List<ArrayList<Pixel>> originalImgMatrix = new ArrayList<ArrayList<Pixel>>(imgH);
-		ArrayList<Pixel> listRow;
-		for (int i = 0; i < imgMatrix.size(); i++) {
-			listRow = imgMatrix.get(i);
-			originalImgMatrix.add(new ArrayList<Pixel>(imgW));
-			for (int j = 0; j < listRow.size(); j++) {
-				originalImgMatrix.get(i).add(listRow.get(j));
+		int[] originalPixels = imgPixels;
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		ArrayList<Future<?>> writes = new ArrayList<Future<?>>();
+		IOException failure;
+		try {
+			carve(ks, t -> {
+				// Copy the rows out since carving continues while the file is written
+				ImageProcessor reduced = new ImageProcessor(imgH, imgW, compactPixels());
+				String FName = FNames[t];
+				writes.add(writer.submit(() -> {
+					reduced.write(FName);
+					return null;
+				}));
+			});
+		} finally {
+			// Wait for every write, even after a failure, so none outlives the call
+			failure = awaitWrites(writes);
+			writer.shutdown();
+			// Restore ImageProcessor object back to original state before reduction
+			imgW = originalW;
+			imgPixels = originalPixels;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	} // writeReduced
+	
+	/**
+	 * Waits for every background write to finish. Interrupts do not
+	 * cut the wait short, they are passed on once it is over.
+	 * @param writes  Writes submitted
+	 * @return  Failure of the first write that failed with the failures
+	 			of the others suppressed in it, null if all succeeded
+	 */
+	private static IOException awaitWrites(ArrayList<Future<?>> writes) {
+		IOException failure = null;
+		boolean interrupted = false;
+		Throwable cause;
+		for (Future<?> write : writes) {
+			while (true) {
+				try {
+					write.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					cause = e.getCause();
+					if (failure == null) {
+						failure = (cause instanceof IOException) ? (IOException)cause : new IOException(cause);
+					} else {
+						failure.addSuppressed(cause);
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return failure;
+	} // awaitWrites
+	
+	/**
+	 * Removes up to maxK cuts and writes the order pixels were removed in
+	 * to an index file, so that any reduction up to maxK can later be made
+	 * by reduce(k, FName) without carving. Each pixel gets the number of
+	 * the cut that removed it, counting from 1, or 0 if it is kept. Entries
+	 * take two bytes when maxK fits in an unsigned short, four otherwise,
+	 * after a 16 byte header ("BSEQ", then height, width and maxK as
+	 * big-endian ints). This image is left unchanged.
+	 * @param maxK  Largest reduction the index can produce, less than the width
+	 * @param FName  Filename to write the index to
+	 * @throws IOException  If file cannot be written
+	 */
+	public void writeSeamOrder(int maxK, String FName) throws IOException {
+		if (maxK < 0 || maxK >= imgW) {
+			throw new IllegalArgumentException("Invalid maximum reduction " + maxK + " for width " + imgW);
+		}
+		int[] order = seamOrder(maxK);
+		int entry = (maxK > 0xFFFF) ? 4 : 2;
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int rowBytes = entry * imgW;
+			ByteBuffer buf = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, rowBytes));
+			buf.putInt(SEAM_ORDER_MAGIC).putInt(imgH).putInt(imgW).putInt(maxK);
+			for (int i = 0; i < imgH; i++) {
+				if (buf.remaining() < rowBytes) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						fc.write(buf);
+					}
+					buf.clear();
+				}
+				for (int j = 0; j < imgW; j++) {
+					if (entry == 2) {
+						buf.putShort((short)order[i * imgStride + j]);
+					} else {
+						buf.putInt(order[i * imgStride + j]);
+					}
+				}
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				fc.write(buf);
+			}
+		}
+	} // writeSeamOrder
+	
+	/**
+	 * Removes maxK cuts, recording the cut each pixel was removed by.
+	 * This image is left unchanged.
+	 * @param maxK  Number of cuts to remove
+	 * @return  Number of the cut that removed each pixel, counting from 1,
+	 * 			or 0 if it is kept, stored like imgPixels
+	 */
+	private int[] seamOrder(int maxK) {
+		int originalW = imgW;
+		int[] originalPixels = imgPixels;
+		int[] order = new int[imgH * imgStride];
+		carveColumns = new int[imgH * imgStride];
+		for (int i = 0; i < imgH; i++) {
+			for (int j = 0; j < imgW; j++) {
+				carveColumns[i * imgStride + j] = j;
+			}
+		}
+		removalOrder = order;
+		try {
+			carve(maxK);
+		} finally {
+			carveColumns = null;
+			removalOrder = null;
+			imgW = originalW;
+			imgPixels = originalPixels;
+		}
+		return order;
+	} // seamOrder
+	
+	/**
+	 * Compute the new image matrix after enlarging the width by k
+	 * Result written to file named FName. Filenames ending in
+	 * BINARY_EXTENSION are written as binary images, all others as text.
+	 * @param k  Number of pixels to enlarge image width by
+	 * @param FName  Filename to write modified image pixel data to
+	 * @see #enlarge(int)
+	 */
+	public void writeEnlarged(int k, String FName) {
+		try {
+			enlarge(k).write(FName);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	} // writeEnlarged
+	
+	/**
+	 * Compute the new image matrix after enlarging the width by k. The k
+	 * cuts that reducing the width by k would remove are found once, then
+	 * every pixel in them is followed by a new pixel averaging it with its
+	 * right neighbor, or its left neighbor in the last column. To enlarge
+	 * by the width or more, enlarge the result again.
+	 * This image is left unchanged.
+	 * @param k  Number of pixels to enlarge image width by, less than the width
+	 * @return  New image holding the enlarged image matrix
+	 */
+	public ImageProcessor enlarge(int k) {
+		if (k < 0 || (k > 0 && k >= imgW)) {
+			throw new IllegalArgumentException("Invalid enlargement " + k + " for width " + imgW);
+		}
+		int[] order = seamOrder(k);
+		int width = imgW + k;
+		int last = imgW - 1;
+		int[] enlarged = new int[imgH * width];
+		int row, pos, p, q;
+		for (int i = 0; i < imgH; i++) {
+			row = i * imgStride;
+			pos = i * width;
+			for (int j = 0; j < imgW; j++) {
+				p = imgPixels[row + j];
+				enlarged[pos++] = p;
+				if (order[row + j] != 0) {
+					q = imgPixels[row + ((j < last) ? j + 1 : j - 1)];
+					enlarged[pos++] = Pixel.pack((Pixel.r(p) + Pixel.r(q)) >> 1,
+												 (Pixel.g(p) + Pixel.g(q)) >> 1,
+												 (Pixel.b(p) + Pixel.b(q)) >> 1);
+				}
 			}
 		}
+		return new ImageProcessor(imgH, width, enlarged);
+	} // enlarge
+	
+	/**
+	 * Reduces the width of the image by k using a seam order index written
+	 * by writeSeamOrder, keeping every pixel not removed by the first k cuts.
+	 * The index is memory-mapped and read in a single pass.
+	 * This image is left unchanged.
+	 * @param k  Number of pixels to reduce image width by, at most the
+	 * 			 maximum reduction of the index
+	 * @param FName  Filename of the seam order index of this image
+	 * @return  New image holding the reduced image matrix
+	 * @throws IOException  If the index cannot be read or does not match the image
+	 */
+	public ImageProcessor reduce(int k, String FName) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(SEAM_ORDER_HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (fc.read(header) < 0) {
+					break;
+				}
+			}
+			header.flip();
+			if (header.remaining() < SEAM_ORDER_HEADER_SIZE || header.getInt() != SEAM_ORDER_MAGIC) {
+				throw new IOException(FName + " is not a seam order index");
+			}
+			if (header.getInt() != imgH || header.getInt() != imgW) {
+				throw new IOException(FName + " indexes an image of a different size");
+			}
+			int maxK = header.getInt();
+			if (k < 0 || k > maxK) {
+				throw new IllegalArgumentException("Invalid reduction " + k + ", index holds up to " + maxK);
+			}
+			int entry = (maxK > 0xFFFF) ? 4 : 2;
+			long rowBytes = (long)entry * imgW;
+			if (fc.size() < SEAM_ORDER_HEADER_SIZE + rowBytes * imgH) {
+				throw new IOException(FName + " is truncated");
+			}
+			int width = imgW - k;
+			int[] reduced = new int[imgH * width];
+			int[] order = new int[imgW];
+			short[] shorts = (entry == 2) ? new short[imgW] : null;
+			// Map whole rows at a time, a single mapping is limited to 2GB
+			int rowsPerMap = (int)Math.min(imgH, MAX_MAP_SIZE / Math.max(rowBytes, 1));
+			MappedByteBuffer mapped;
+			int rows, pos, end, row;
+			for (int i = 0; i < imgH; i += rowsPerMap) {
+				rows = Math.min(rowsPerMap, imgH - i);
+				mapped = fc.map(MapMode.READ_ONLY, SEAM_ORDER_HEADER_SIZE + rowBytes * i, rowBytes * rows);
+				for (int r = 0; r < rows; r++) {
+					if (entry == 2) {
+						mapped.asShortBuffer().get(shorts);
+						mapped.position(mapped.position() + (int)rowBytes);
+						for (int j = 0; j < imgW; j++) {
+							order[j] = shorts[j] & 0xFFFF;
+						}
+					} else {
+						mapped.asIntBuffer().get(order);
+						mapped.position(mapped.position() + (int)rowBytes);
+					}
+					row = (i + r) * imgStride;
+					pos = (i + r) * width;
+					end = pos + width;
+					for (int j = 0; j < imgW; j++) {
+						if (order[j] == 0 || order[j] > k) {
+							if (pos == end) {
+								throw new IOException(FName + " does not remove one pixel per row per cut");
+							}
+							reduced[pos++] = imgPixels[row + j];
+						}
+					}
+					if (pos != end) {
+						throw new IOException(FName + " does not remove one pixel per row per cut");
+					}
+				}
+			}
+			return new ImageProcessor(imgH, width, reduced);
+		}
+	} // reduce
+	
+	/**
+	 * @return  Copy of the pixels with rows stored imgW apart
+	 */
+	private int[] compactPixels() {
+		int[] compact = new int[imgH * imgW];
+		for (int i = 0; i < imgH; i++) {
+			System.arraycopy(imgPixels, i * imgStride, compact, i * imgW, imgW);
+		}
+		return compact;
+	} // compactPixels
+	
+	/**
+	 * Removes k minimum cost vertical cuts from the image in place,
+	 * leaving the remaining pixels at the start of each row.
+	 * @param k  Number of pixels to reduce image width by
+	 */
+	private void carve(int k) {
+		carve(new int[] {k}, null);
+	} // carve
+	
+	/**
+	 * Removes minimum cost vertical cuts from the image in place up to the
+	 * largest of the given reductions, leaving the remaining pixels at the
+	 * start of each row.
+	 * @param ks  Numbers of pixels to reduce image width by, in ascending order
+	 * @param reached  Called with the index in ks of each reduction once the
+	 * 				   image has been reduced by it, may be null
+	 */
+	private void carve(int[] ks, IntConsumer reached) {
+		int k = (ks.length == 0) ? 0 : ks[ks.length - 1];
+		if (ks.length > 0 && (ks[0] < 0 || k >= imgW)) {
+			throw new IllegalArgumentException("Invalid reduction " + ((ks[0] < 0) ? ks[0] : k) + " for width " + imgW);
+		}
+		int[] importance, seam, impLo, impHi;
+		ImageMetrics.PhaseEvent phase;
+		ImageMetrics.SeamEvent seamEvent;
+		long cutCost;
 		// Begin width reduction
-		s1 = new ArrayList<Integer>();
-		s2 = new ArrayList<Integer>();
+		SeamFinder finder = new SeamFinder(pool);
+		importance = new int[imgH * imgStride];
+		seam = new int[imgH];
+		impLo = new int[imgH];
+		impHi = new int[imgH];
+		removedEnergy = 0;
+		int next = reachedTargets(ks, 0, 0, reached);
+		if (seamBatchSize > 1 && !useGraphSearch) {
+			carveBatched(ks, next, reached, finder, importance);
+			return;
+		}
 		for (int cnt = 0; cnt < k; cnt++) {
+			seamEvent = new ImageMetrics.SeamEvent();
+			seamEvent.begin();
 			// Compute importance
-			importance = this.getImportance();
-			// Construct WGraph with Pixel info
-			pixelG = new WGraph(importance);
-			// Find minimum cost vertical cut
-			s1.clear();
-			s2.clear();
-			for (int j = 0; j < imgW; j++) { // Construct sets for S2S shortest path search
-				s1.add(j);
-				s1.add(0);
-				s2.add(j);
-				s2.add(lastRow);
-			}
-			minCut = pixelG.S2S(s1, s2);
+			if (cnt == 0 || !incrementalImportance) {
+				computeImportance(importance);
+			}
+			if (useGraphSearch) {
+				graphSeam(importance, false, seam);
+			} else {
+				phase = ImageMetrics.begin(ImageMetrics.Phase.SEARCH);
+				if (cnt == 0 || !incrementalImportance) {
+					// Find minimum cost vertical cut
+					seam = finder.findVerticalSeam(importance, imgW, imgH, imgStride);
+				} else {
+					// Update cut costs around the previous cut
+					seam = finder.updateVerticalSeam(importance, imgW, imgH, imgStride, seam, impLo, impHi);
+				}
+				ImageMetrics.end(phase, (long)imgH * imgW, 0);
+			}
+			cutCost = seamEnergy(importance, seam);
+			removedEnergy += cutCost;
 			// Remove pixels in min cut from image
-			for (int x = 0; x < minCut.size(); x+=2) {
-				imgMatrix.get(minCut.get(x+1)).remove(minCut.get(x).intValue());
-			}
-			imgW--;
-		}
-		// Write result
-		try (BufferedWriter bw = new BufferedWriter(new FileWriter(FName))) {  // Open file for writing
-			ArrayList<Pixel> pixelRow;
-			bw.write(imgH + "\n");
-			bw.write(imgW + "\n");
-			for (int i = 0; i < imgMatrix.size(); i++) {
-				pixelRow = imgMatrix.get(i);
-				for (Pixel p : pixelRow) {
-					bw.write(p.r + " " + p.g + " " + p.b + " ");
+			if (incrementalImportance) {
+				removeSeam(seam, importance);
+				updateImportance(importance, seam, impLo, impHi);
+			} else {
+				removeSeam(seam, null);
+			}
+			ImageMetrics.seamRemoved(seamEvent, cnt, imgW + 1, imgH, cutCost, useGraphSearch);
+			next = reachedTargets(ks, next, cnt + 1, reached);
+		}
+	} // carve
+	
+	/**
+	 * Finds the minimum cost cut by building a WGraph of the importance
+	 * and searching it with S2S. Horizontal cuts are searched for in a
+	 * graph of the columns, so they are its vertical cuts.
+	 * @param importance  Importance matrix to search
+	 * @param horizontal  True to find a horizontal cut, false for a vertical one
+	 * @param seam  Array to write the cut to, the column of its pixel on each
+	 				row or the row of its pixel on each column
+	 */
+	private void graphSeam(int[] importance, boolean horizontal, int[] seam) {
+		int across = horizontal ? imgH : imgW;
+		int lastRow = (horizontal ? imgW : imgH) - 1;
+		// Construct WGraph with Pixel info
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.GRAPH_BUILD);
+		WGraph pixelG = new WGraph(horizontal ? toColumnMatrix(importance) : toMatrix(importance));
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+		// Find minimum cost cut
+		phase = ImageMetrics.begin(ImageMetrics.Phase.SEARCH);
+		int[] s1 = new int[2 * across];
+		int[] s2 = new int[2 * across];
+		for (int j = 0; j < across; j++) { // Construct sets for S2S shortest path search
+			s1[2 * j] = j;
+			s1[2 * j + 1] = 0;
+			s2[2 * j] = j;
+			s2[2 * j + 1] = lastRow;
+		}
+		WGraph.SearchContext ctx = pixelG.newSearchContext();
+		pixelG.S2S(ctx, s1, s2);
+		int[] minCut = ctx.getPath();
+		for (int x = 0; x < 2 * ctx.getPathLength(); x+=2) {
+			seam[minCut[x+1]] = minCut[x];
+		}
+		ImageMetrics.end(phase, (long)imgH * imgW, 0, ctx.getSettledCount());
+	} // graphSeam
+	
+	/**
+	 * Removes kw vertical and kh horizontal minimum cost cuts from the image
+	 * in place, leaving the remaining pixels at the start of each row. Each
+	 * step removes the cheaper of the two cuts. Importance and the costs of
+	 * the finder of the cut removed are updated around it the way carve(int[],
+	 * IntConsumer) does, the other finder searches afresh as every one of its
+	 * paths lost a pixel.
+	 * @param kw  Number of pixels to reduce image width by
+	 * @param kh  Number of pixels to reduce image height by
+	 */
+	private void carve(int kw, int kh) {
+		if (kw < 0 || kw >= imgW || kh < 0 || kh >= imgH) {
+			throw new IllegalArgumentException("Cannot reduce " + imgW + " x " + imgH + " image by " + kw + " x " + kh);
+		}
+		if (kh == 0) {
+			carve(kw);
+			return;
+		}
+		SeamFinder vFinder = new SeamFinder(pool);
+		SeamFinder hFinder = new SeamFinder(pool);
+		int[] importance = new int[imgH * imgStride];
+		removedEnergy = 0;
+		if (seamBatchSize > 1 && !useGraphSearch) {
+			carveBatched(kw, kh, vFinder, hFinder, importance);
+			return;
+		}
+		int[] vSeam = new int[imgH], hSeam = new int[imgW];
+		// Recomputed part of each row after a vertical cut, of each column after a horizontal one
+		int[] impLo = new int[Math.max(imgW, imgH)];
+		int[] impHi = new int[Math.max(imgW, imgH)];
+		boolean vertical = false;
+		ImageMetrics.PhaseEvent phase;
+		ImageMetrics.SeamEvent seamEvent;
+		long vCost = 0, hCost = 0, cost;
+		int width;
+		for (int cnt = 0; kw > 0 || kh > 0; cnt++) {
+			seamEvent = new ImageMetrics.SeamEvent();
+			seamEvent.begin();
+			width = imgW;
+			boolean update = cnt > 0 && incrementalImportance;
+			if (!update) {
+				computeImportance(importance);
+			}
+			if (useGraphSearch) {
+				if (kw > 0) {
+					graphSeam(importance, false, vSeam);
+				}
+				if (kh > 0) {
+					graphSeam(importance, true, hSeam);
 				}
-				bw.write("\n");
+			} else {
+				phase = ImageMetrics.begin(ImageMetrics.Phase.SEARCH);
+				// Only the costs of the orientation removed last step can be updated
+				if (kw > 0) {
+					vSeam = (update && vertical)
+							? vFinder.updateVerticalSeam(importance, imgW, imgH, imgStride, vSeam, impLo, impHi)
+							: vFinder.findVerticalSeam(importance, imgW, imgH, imgStride);
+				}
+				if (kh > 0) {
+					hSeam = (update && !vertical)
+							? hFinder.updateHorizontalSeam(importance, imgW, imgH, imgStride, hSeam, impLo, impHi)
+							: hFinder.findHorizontalSeam(importance, imgW, imgH, imgStride);
+				}
+				ImageMetrics.end(phase, (long)imgH * imgW, 0);
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
+			if (kw > 0) {
+				vCost = seamEnergy(importance, vSeam);
+			}
+			if (kh > 0) {
+				hCost = horizontalSeamEnergy(importance, hSeam);
+			}
+			// Remove the cheaper cut
+			vertical = kh == 0 || (kw > 0 && vCost <= hCost);
+			if (vertical) {
+				cost = vCost;
+				if (incrementalImportance) {
+					removeSeam(vSeam, importance);
+					updateImportance(importance, vSeam, impLo, impHi);
+				} else {
+					removeSeam(vSeam, null);
+				}
+				kw--;
+			} else {
+				cost = hCost;
+				if (incrementalImportance) {
+					removeHorizontalSeam(hSeam, importance);
+					updateHorizontalImportance(importance, hSeam, impLo, impHi);
+				} else {
+					removeHorizontalSeam(hSeam, null);
+				}
+				kh--;
+			}
+			removedEnergy += cost;
+			ImageMetrics.seamRemoved(seamEvent, cnt, width, imgH, cost, useGraphSearch);
 		}
-		// Restore ImageProcessor object back to original state before reduction
-		imgW = originalW;
-		imgMatrix.clear();
-		for (int i = 0; i < originalImgMatrix.size(); i++) {
-			listRow = originalImgMatrix.get(i);
-			imgMatrix.add(new ArrayList<Pixel>(imgW));
-			for (int j = 0; j < listRow.size(); j++) {
-				imgMatrix.get(i).add(listRow.get(j));
+	} // carve
+	
+	/**
+	 * Removes kw vertical and kh horizontal cuts from the image in place,
+	 * several per importance computation as set by setSeamBatchSize. Each
+	 * batch is of the orientation whose first cut is cheaper.
+	 * @param kw  Number of pixels to reduce image width by
+	 * @param kh  Number of pixels to reduce image height by
+	 * @param vFinder  Seam finder to search for vertical cuts with
+	 * @param hFinder  Seam finder to search for horizontal cuts with
+	 * @param importance  Array to compute importance into
+	 */
+	private void carveBatched(int kw, int kh, SeamFinder vFinder, SeamFinder hFinder, int[] importance) {
+		int[][] vSeams = new int[seamBatchSize][imgH];
+		int[][] hSeams = new int[seamBatchSize][imgW];
+		int[] cols = new int[seamBatchSize];
+		int vFound = 0, hFound = 0, found;
+		for (int cnt = 0; kw > 0 || kh > 0; cnt += found) {
+			ImageMetrics.SeamEvent seamEvent = new ImageMetrics.SeamEvent();
+			seamEvent.begin();
+			int width = imgW;
+			computeImportance(importance);
+			ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.SEARCH);
+			if (kw > 0) {
+				vFound = vFinder.findVerticalSeams(importance, imgW, imgH, imgStride,
+												   (kw < vSeams.length) ? Arrays.copyOf(vSeams, kw) : vSeams);
+			}
+			if (kh > 0) {
+				hFound = hFinder.findHorizontalSeams(importance, imgW, imgH, imgStride,
+													 (kh < hSeams.length) ? Arrays.copyOf(hSeams, kh) : hSeams);
+			}
+			ImageMetrics.end(phase, (long)imgH * imgW, 0);
+			long cost = 0;
+			if (kh == 0 || (kw > 0 && seamEnergy(importance, vSeams[0]) <= horizontalSeamEnergy(importance, hSeams[0]))) {
+				found = vFound;
+				for (int s = 0; s < found; s++) {
+					cost += seamEnergy(importance, vSeams[s]);
+				}
+				removeSeams(vSeams, found, cols);
+				kw -= found;
+			} else {
+				found = hFound;
+				for (int s = 0; s < found; s++) {
+					cost += horizontalSeamEnergy(importance, hSeams[s]);
+				}
+				removeHorizontalSeams(hSeams, found);
+				kh -= found;
 			}
+			removedEnergy += cost;
+			// One event for the whole batch
+			ImageMetrics.seamRemoved(seamEvent, cnt, width, imgH, cost, false);
 		}
-	} // writeReduced
+	} // carveBatched
+	
+	/**
+	 * Removes one pixel from every column, shifting the rest of the column up
+	 * @param seam  Row of pixel to remove for each column
+	 * @param importance  Importance matrix to shift along with the pixels, may be null
+	 */
+	private void removeHorizontalSeam(int[] seam, int[] importance) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.REMOVE);
+		int[] dst = carveTarget();
+		int row, src;
+		// Rows are written top down, each only reading itself and the row below
+		for (int i = 0; i < imgH - 1; i++) {
+			row = i * imgStride;
+			for (int j = 0; j < imgW; j++) {
+				src = ((i < seam[j]) ? row : row + imgStride) + j;
+				dst[row + j] = imgPixels[src];
+				if (importance != null) {
+					importance[row + j] = importance[src];
+				}
+			}
+		}
+		imgPixels = dst;
+		imgH--;
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+	} // removeHorizontalSeam
+	
+	/**
+	 * Removes several pixels from every column, shifting the rest of the column up
+	 * @param seams  Cuts to remove, sharing no pixel
+	 * @param count  Number of cuts in seams to remove
+	 */
+	private void removeHorizontalSeams(int[][] seams, int count) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.REMOVE);
+		int[] target = carveTarget();
+		// Rows removed from each column in ascending order, count per column
+		int[] removed = new int[imgW * count];
+		int[] passed = new int[imgW];
+		int src;
+		for (int j = 0; j < imgW; j++) {
+			for (int s = 0; s < count; s++) {
+				removed[j * count + s] = seams[s][j];
+			}
+			Arrays.sort(removed, j * count, (j + 1) * count);
+		}
+		// Rows are written top down, each only reading itself and rows below it
+		for (int i = 0; i < imgH - count; i++) {
+			for (int j = 0; j < imgW; j++) {
+				src = i + passed[j];
+				while (passed[j] < count && removed[j * count + passed[j]] == src) {
+					passed[j]++;
+					src++;
+				}
+				target[i * imgStride + j] = imgPixels[src * imgStride + j];
+			}
+		}
+		imgPixels = target;
+		imgH -= count;
+		ImageMetrics.end(phase, (long)imgH * imgW, 0);
+	} // removeHorizontalSeams
+	
+	/**
+	 * Recomputes the importance of pixels affected by removing a horizontal
+	 * cut, the way updateImportance does for a vertical one with rows and
+	 * columns swapped. The first and last rows are always recomputed.
+	 * @param importance  Importance matrix already shifted by removeHorizontalSeam
+	 * @param seam  Row of pixel removed from each column
+	 * @param impLo  Set to the first recomputed row of each column, excluding the edges
+	 * @param impHi  Set to the last recomputed row of each column, excluding the edges
+	 */
+	private void updateHorizontalImportance(int[] importance, int[] seam, int[] impLo, int[] impHi) {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.IMPORTANCE);
+		long updated = 0;
+		int left, right, lo, hi;
+		int last = imgH - 1;
+		for (int j = 0; j < imgW; j++) {
+			left = seam[(j == 0) ? imgW - 1 : j - 1];
+			right = seam[(j == imgW - 1) ? 0 : j + 1];
+			lo = Math.max(Math.min(seam[j], Math.min(left, right)) - 1, 0);
+			hi = Math.min(Math.max(seam[j], Math.max(left, right)), last);
+			for (int i = lo; i <= hi; i++) {
+				importance[i * imgStride + j] = computePixelImportance(i, j);
+			}
+			importance[j] = computePixelImportance(0, j);
+			importance[last * imgStride + j] = computePixelImportance(last, j);
+			impLo[j] = lo;
+			impHi[j] = hi;
+			updated += hi - lo + 3;
+		}
+		ImageMetrics.end(phase, updated, 0);
+	} // updateHorizontalImportance
+	
+	/**
+	 * Reports every reduction in ks equal to the number of cuts removed so far
+	 * @param ks  Numbers of pixels to reduce image width by, in ascending order
+	 * @param next  Index in ks of the first reduction not yet reached
+	 * @param removed  Number of cuts removed so far
+	 * @param reached  Called with the index of each reduction reached, may be null
+	 * @return  Index in ks of the first reduction not yet reached
+	 */
+	private static int reachedTargets(int[] ks, int next, int removed, IntConsumer reached) {
+		while (next < ks.length && ks[next] <= removed) {
+			if (reached != null) {
+				reached.accept(next);
+			}
+			next++;
+		}
+		return next;
+	} // reachedTargets
+	
+	/**
+	 * Removes cuts from the image in place, several per importance
+	 * computation as set by setSeamBatchSize. Batches stop at each
+	 * reduction so it can be reported.
+	 * @param ks  Numbers of pixels to reduce image width by, in ascending order
+	 * @param next  Index in ks of the first reduction not yet reached
+	 * @param reached  Called with the index of each reduction reached, may be null
+	 * @param finder  Seam finder to search with
+	 * @param importance  Array to compute importance into
+	 */
+	private void carveBatched(int[] ks, int next, IntConsumer reached, SeamFinder finder, int[] importance) {
+		int[][] seams = new int[seamBatchSize][imgH];
+		int[] cols = new int[seamBatchSize];
+		int found, left;
+		for (int cnt = 0; next < ks.length; cnt += found) {
+			ImageMetrics.SeamEvent seamEvent = new ImageMetrics.SeamEvent();
+			seamEvent.begin();
+			int width = imgW;
+			computeImportance(importance);
+			left = ks[next] - cnt;
+			int[][] batch = (left < seams.length) ? Arrays.copyOf(seams, left) : seams;
+			ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.SEARCH);
+			found = finder.findVerticalSeams(importance, imgW, imgH, imgStride, batch);
+			ImageMetrics.end(phase, (long)imgH * imgW, 0);
+			long cost = 0;
+			for (int s = 0; s < found; s++) {
+				cost += seamEnergy(importance, seams[s]);
+			}
+			removedEnergy += cost;
+			removeSeams(seams, found, cols);
+			// One event for the whole batch
+			ImageMetrics.seamRemoved(seamEvent, cnt, width, imgH, cost, false);
+			next = reachedTargets(ks, next, cnt + found, reached);
+		}
+	} // carveBatched
+	
+	/**
+	 * @param importance  Importance matrix the cut was found in
+	 * @param seam  Column of pixel in the cut for each row
+	 * @return  Sum of the importance of the pixels in the cut
+	 */
+	private long seamEnergy(int[] importance, int[] seam) {
+		long energy = 0;
+		for (int i = 0; i < imgH; i++) {
+			energy += importance[i * imgStride + seam[i]];
+		}
+		return energy;
+	} // seamEnergy
+	
+	/**
+	 * @param importance  Importance matrix the cut was found in
+	 * @param seam  Row of pixel in the cut for each column
+	 * @return  Sum of the importance of the pixels in the cut
+	 */
+	private long horizontalSeamEnergy(int[] importance, int[] seam) {
+		long energy = 0;
+		for (int j = 0; j < imgW; j++) {
+			energy += importance[seam[j] * imgStride + j];
+		}
+		return energy;
+	} // horizontalSeamEnergy
+	
+	/**
+	 * Writes the image to a file. Filenames ending in BINARY_EXTENSION
+	 * are written as binary images, all others as text.
+	 * @param FName  Filename to write pixel data to
+	 * @throws IOException  If file cannot be written
+	 */
+	public void write(String FName) throws IOException {
+		write(FName, FName.endsWith(BINARY_EXTENSION));
+	} // write
+	
+	/**
+	 * Writes the image to a file
+	 * @param FName  Filename to write pixel data to
+	 * @param binary  True to write a binary image, false to write text
+	 * @throws IOException  If file cannot be written
+	 */
+	public void write(String FName, boolean binary) throws IOException {
+		ImageMetrics.PhaseEvent phase = ImageMetrics.begin(ImageMetrics.Phase.WRITE);
+		if (binary) {
+			writeBinary(FName);
+		} else {
+			writeText(FName);
+		}
+		ImageMetrics.end(phase, (long)imgH * imgW, new File(FName).length());
+	} // write
+	
+	/**
+	 * Writes the image to a text file in the format read by readText.
+	 * Digits are formatted straight into a byte buffer.
+	 * @param FName  Filename to write pixel data to
+	 * @throws IOException  If file cannot be written
+	 */
+	private void writeText(String FName) throws IOException {
+		writeTextRows(FName, imgH, imgW, rows);
+	} // writeText
+	
+	/**
+	 * Writes pixels to a text file in the format read by readText
+	 * @param FName  Filename to write pixel data to
+	 * @param height  Number of rows to write
+	 * @param width  Number of pixels per row
+	 * @param rows  Rows holding the pixels
+	 * @throws IOException  If file cannot be written
+	 */
+	static void writeTextRows(String FName, int height, int width, PixelRows rows) throws IOException {
+		try (OutputStream out = new FileOutputStream(FName)) {  // Open file for writing
+			byte[] buf = new byte[WRITE_BUFFER_SIZE];
+			int[] row = new int[width];
+			int len, p;
+			len = putInt(buf, 0, height);
+			buf[len++] = '\n';
+			len = putInt(buf, len, width);
+			buf[len++] = '\n';
+			for (int i = 0; i < height; i++) {
+				rows.getRow(i, row);
+				for (int j = 0; j < width; j++) {
+					if (len > buf.length - 3 * MAX_VALUE_TEXT) {
+						out.write(buf, 0, len);
+						len = 0;
+					}
+					p = row[j];
+					len = putValue(buf, len, Pixel.r(p));
+					len = putValue(buf, len, Pixel.g(p));
+					len = putValue(buf, len, Pixel.b(p));
+				}
+				if (len == buf.length) {
+					out.write(buf, 0, len);
+					len = 0;
+				}
+				buf[len++] = '\n';
+			}
+			out.write(buf, 0, len);
+		}
+	} // writeTextRows
+	
+	/**
+	 * Writes an RGB value followed by a space into a buffer
+	 * @param buf  Buffer to write to
+	 * @param pos  Position to start writing at
+	 * @param value  Value in the range [0, 255]
+	 * @return  Position after the written text
+	 */
+	static int putValue(byte[] buf, int pos, int value) {
+		int off = value * MAX_VALUE_TEXT;
+		int len = VALUE_TEXT[off + MAX_VALUE_TEXT - 1];
+		System.arraycopy(VALUE_TEXT, off, buf, pos, len);
+		return pos + len;
+	} // putValue
+	
+	/**
+	 * Writes the decimal digits of a non-negative int into a buffer
+	 * @param buf  Buffer to write to
+	 * @param pos  Position to start writing at
+	 * @param value  Value to write
+	 * @return  Position after the written digits
+	 */
+	static int putInt(byte[] buf, int pos, int value) {
+		int end = pos + 1;
+		for (int rest = value / 10; rest != 0; rest /= 10) {
+			end++;
+		}
+		int i = end;
+		do {
+			buf[--i] = (byte)('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		return end;
+	} // putInt
+	
+	/**
+	 * Writes the image to a binary file in the format read by readBinary
+	 * @param FName  Filename to write pixel data to
+	 * @throws IOException  If file cannot be written
+	 */
+	private void writeBinary(String FName) throws IOException {
+		writeBinaryRows(FName, imgH, imgW, rows);
+	} // writeBinary
+	
+	/**
+	 * Writes pixels to a binary file in the format read by readBinary
+	 * @param FName  Filename to write pixel data to
+	 * @param height  Number of rows to write
+	 * @param width  Number of pixels per row
+	 * @param rows  Rows holding the pixels
+	 * @throws IOException  If file cannot be written
+	 */
+	static void writeBinaryRows(String FName, int height, int width, PixelRows rows) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int rowBytes = 3 * width;
+			ByteBuffer buf = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, rowBytes));
+			buf.putInt(BINARY_MAGIC).putInt(height).putInt(width);
+			int[] row = new int[width];
+			int p;
+			for (int i = 0; i < height; i++) {
+				if (buf.remaining() < rowBytes) {
+					buf.flip();
+					while (buf.hasRemaining()) {
+						fc.write(buf);
+					}
+					buf.clear();
+				}
+				rows.getRow(i, row);
+				for (int j = 0; j < width; j++) {
+					p = row[j];
+					buf.put((byte)Pixel.r(p)).put((byte)Pixel.g(p)).put((byte)Pixel.b(p));
+				}
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				fc.write(buf);
+			}
+		}
+	} // writeBinaryRows
+	
+	/**
+	 * Converts a text image file to a binary image file
+	 * @param textFName  Filename of text image to read
+	 * @param binaryFName  Filename of binary image to write
+	 * @throws IOException  If either file cannot be accessed
+	 */
+	public static void convertToBinary(String textFName, String binaryFName) throws IOException {
+		ImageProcessor img = new ImageProcessor();
+		img.readText(textFName);
+		img.writeBinary(binaryFName);
+	} // convertToBinary
+	
+	/**
+	 * Converts a binary image file to a text image file
+	 * @param binaryFName  Filename of binary image to read
+	 * @param textFName  Filename of text image to write
+	 * @throws IOException  If either file cannot be accessed
+	 */
+	public static void convertToText(String binaryFName, String textFName) throws IOException {
+		ImageProcessor img = new ImageProcessor();
+		img.readBinary(binaryFName);
+		img.writeText(textFName);
+	} // convertToText
 	
 	/*
 	 * (non-Javadoc)
@@ -249,7 +1973,7 @@ public class ImageProcessor {
 		StringBuilder ipStr = new StringBuilder();
 		for (int i = 0; i < imgH; i++) {
 			for (int j = 0; j < imgW; j++) {
-				ipStr.append(imgMatrix.get(i).get(j).toString());
+				ipStr.append(Pixel.toString(imgPixels[i * imgStride + j]));
 				ipStr.append(" ");
 			}
 			ipStr.append('\n');
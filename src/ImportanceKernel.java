@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Computes the importance of the interior pixels of a row, the ones whose
+ * left and right neighbors are in the row without wrapping around. The
+ * implementation is picked once at startup: VectorImportanceKernel, using
+ * the incubating Vector API, when it was compiled (src/vector) and the JVM
+ * was started with --add-modules jdk.incubator.vector, otherwise a scalar
+ * loop. Setting the imageresizer.scalar system property forces the scalar
+ * loop. Both give exactly the values of ImageProcessor.computePDist.
+ *
+ * @author Weston Berg
+ */
+abstract class ImportanceKernel {
+	
+	/**
+	 * Kernel used by ImageProcessor
+	 */
+	static final ImportanceKernel INSTANCE = load();
+	
+	/**
+	 * Computes XImportance plus YImportance of the pixels in columns from
+	 * to to - 1 of a row, where 0 < from and to < width
+	 * @param pixels  Packed pixels of the image
+	 * @param row  Index in pixels of the start of the row
+	 * @param up  Index in pixels of the start of the row above
+	 * @param down  Index in pixels of the start of the row below
+	 * @param from  First column to compute
+	 * @param to  Column after the last column to compute
+	 * @param importance  Array to write importance to, at the same indices as pixels
+	 */
+	abstract void computeRow(int[] pixels, int row, int up, int down, int from, int to, int[] importance);
+	
+	/**
+	 * @return  Name of the kernel, for reports
+	 */
+	abstract String name();
+	
+	/**
+	 * @return  Vector kernel if it can be loaded, the scalar kernel otherwise
+	 */
+	private static ImportanceKernel load() {
+		if (!Boolean.getBoolean("imageresizer.scalar")
+				&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (ImportanceKernel)Class.forName("VectorImportanceKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Not compiled in, fall back to the scalar kernel
+			}
+		}
+		return new Scalar();
+	} // load
+	
+	/**
+	 * Kernel computing one pixel at a time
+	 * @author Weston Berg
+	 */
+	static final class Scalar extends ImportanceKernel {
+		
+		@Override
+		void computeRow(int[] pixels, int row, int up, int down, int from, int to, int[] importance) {
+			for (int j = from; j < to; j++) {
+				importance[row + j] = ImageProcessor.computePDist(pixels[row + j - 1], pixels[row + j + 1])
+									+ ImageProcessor.computePDist(pixels[up + j], pixels[down + j]);
+			}
+		} // computeRow
+		
+		@Override
+		String name() {
+			return "scalar";
+		} // name
+	} // Scalar
+	
+} // ImportanceKernel
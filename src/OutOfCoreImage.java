@@ -0,0 +1,508 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Image kept in memory-mapped temporary files instead of on the heap, for
+ * images too large to load with ImageProcessor. Pixels, importance and cut
+ * costs are streamed through row by row, so the heap only holds a few rows
+ * at a time and the operating system pages the rest in and out as needed.
+ *
+ * writeReduced removes the same cuts as ImageProcessor.writeReduced, so
+ * the output files are identical. After the first cut only the importance
+ * and costs around the removed cut are updated, by the same SeamFinder code
+ * the in-memory path runs. Like the in-memory path, cuts are removed into a
+ * scratch store that the first removal compacts the loaded pixels into, so
+ * the image is not copied before carving. Images are limited to
+ * Integer.MAX_VALUE pixels, larger ones are rejected when read. Temporary
+ * files are deleted by close.
+ *
+ * Usage: java OutOfCoreImage input k output [tempDirectory]
+ *
+ * @author Weston Berg
+ */
+public class OutOfCoreImage implements Closeable {
+	
+	/**
+	 * Array of ints stored in a temporary file, mapped in chunks since
+	 * a single mapping is limited to 2GB
+	 * @author Weston Berg
+	 */
+	static final class MappedInts extends SeamFinder.IntStore implements Closeable {
+		private static final int CHUNK_SHIFT = 27;
+		private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+		private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+		private static final int MOVE_BUFFER_SIZE = 1 << 12;
+		private final Path file;
+		private final IntBuffer[] chunks;
+		private int[] moveBuf;
+		
+		/**
+		 * @param dir  Directory to create the file in
+		 * @param size  Number of ints to store
+		 * @throws IOException  If the file cannot be created or mapped
+		 */
+		MappedInts(Path dir, int size) throws IOException {
+			file = Files.createTempFile(dir, "ooc", ".ints");
+			int count = (int)(((long)size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+			chunks = new IntBuffer[count];
+			try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long len;
+				for (int c = 0; c < count; c++) {
+					len = Math.min(CHUNK_SIZE, size - ((long)c << CHUNK_SHIFT));
+					chunks[c] = fc.map(MapMode.READ_WRITE, ((long)c << CHUNK_SHIFT) * 4, len * 4).asIntBuffer();
+				}
+			} catch (IOException e) {
+				// Nobody will close a store that failed to open
+				Files.deleteIfExists(file);
+				throw e;
+			}
+		} // MappedInts
+		
+		@Override
+		int get(int i) {
+			return chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+		}
+		
+		@Override
+		void put(int i, int v) {
+			chunks[i >>> CHUNK_SHIFT].put(i & CHUNK_MASK, v);
+		}
+		
+		/**
+		 * Copies ints starting at index i into dst
+		 * @param i  Index of first int to copy
+		 * @param dst  Array to copy to
+		 * @param off  Position in dst to start at
+		 * @param len  Number of ints to copy
+		 */
+		void get(int i, int[] dst, int off, int len) {
+			int n;
+			IntBuffer chunk;
+			while (len > 0) {
+				chunk = chunks[i >>> CHUNK_SHIFT].duplicate();
+				chunk.position(i & CHUNK_MASK);
+				n = Math.min(len, chunk.remaining());
+				chunk.get(dst, off, n);
+				i += n;
+				off += n;
+				len -= n;
+			}
+		} // get
+		
+		/**
+		 * Copies ints from src starting at index i
+		 * @param i  Index of first int to overwrite
+		 * @param src  Array to copy from
+		 * @param off  Position in src to start at
+		 * @param len  Number of ints to copy
+		 */
+		void put(int i, int[] src, int off, int len) {
+			int n;
+			IntBuffer chunk;
+			while (len > 0) {
+				chunk = chunks[i >>> CHUNK_SHIFT].duplicate();
+				chunk.position(i & CHUNK_MASK);
+				n = Math.min(len, chunk.remaining());
+				chunk.put(src, off, n);
+				i += n;
+				off += n;
+				len -= n;
+			}
+		} // put
+		
+		/**
+		 * Copies through a small buffer, starting from the end
+		 * that cannot overwrite ints not yet copied
+		 */
+		@Override
+		void move(int from, int to, int len) {
+			if (moveBuf == null) {
+				moveBuf = new int[MOVE_BUFFER_SIZE];
+			}
+			int n;
+			if (to < from) {
+				for (int done = 0; done < len; done += n) {
+					n = Math.min(MOVE_BUFFER_SIZE, len - done);
+					get(from + done, moveBuf, 0, n);
+					put(to + done, moveBuf, 0, n);
+				}
+			} else if (to > from) {
+				for (int rest = len; rest > 0; rest -= n) {
+					n = Math.min(MOVE_BUFFER_SIZE, rest);
+					get(from + rest - n, moveBuf, 0, n);
+					put(to + rest - n, moveBuf, 0, n);
+				}
+			}
+		} // move
+		
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.Closeable#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			// Mappings are released by the garbage collector, the file can go now
+			Files.deleteIfExists(file);
+		} // close
+	} // MappedInts
+	
+	private final int imgH;
+	private int imgW;
+	/**
+	 * Distance between the starts of two rows in the stores, the
+	 * width of the image as read
+	 */
+	private final int imgStride;
+	private final Path tempDir;
+	/**
+	 * Pixels as read, left untouched by writeReduced
+	 */
+	private final MappedInts loaded;
+	/**
+	 * Store cuts are removed into, created on first use
+	 */
+	private MappedInts carved;
+	/**
+	 * Current pixels, the loaded ones or the carved ones during writeReduced
+	 */
+	private MappedInts pixels;
+	/**
+	 * Rows of the pixel store, for ImageProcessor's readers and writers
+	 */
+	private final ImageProcessor.PixelRows rows = new ImageProcessor.PixelRows() {
+		
+		@Override
+		public void getRow(int i, int[] row) {
+			pixels.get(i * imgStride, row, 0, row.length);
+		}
+		
+		@Override
+		public void putRow(int i, int[] row) {
+			pixels.put(i * imgStride, row, 0, row.length);
+		}
+	};
+	// Stores of the cut search, created on first use
+	private MappedInts importance, cost, origin;
+	/**
+	 * Stores handed to the seam finder for replaying the graph search on ties
+	 */
+	private final List<MappedInts> replayStores;
+	/**
+	 * Finds cuts on the stores with the same code as the in-memory path
+	 */
+	private final SeamFinder finder;
+	
+	/**
+	 * Reads an image into a temporary file in the system temporary directory.
+	 * Files ending in ImageProcessor.BINARY_EXTENSION are read as binary
+	 * images, all others as text.
+	 * @param FName  Filename of file containing pixel info
+	 * @throws IOException  If file cannot be read or the temporary file written
+	 */
+	public OutOfCoreImage(String FName) throws IOException {
+		this(FName, Paths.get(System.getProperty("java.io.tmpdir")));
+	} // OutOfCoreImage
+	
+	/**
+	 * Reads an image into a temporary file in the given directory.
+	 * Files ending in ImageProcessor.BINARY_EXTENSION are read as binary
+	 * images, all others as text.
+	 * @param FName  Filename of file containing pixel info
+	 * @param tempDir  Directory to keep temporary files in
+	 * @throws IOException  If file cannot be read or the temporary file written
+	 */
+	public OutOfCoreImage(String FName, Path tempDir) throws IOException {
+		this.tempDir = tempDir;
+		replayStores = new ArrayList<>();
+		finder = new SeamFinder(null, this::newReplayStore);
+		int[] dims = ImageProcessor.readDimensions(FName);
+		imgH = dims[0];
+		imgW = dims[1];
+		imgStride = imgW;
+		if (imgH < 0 || imgW < 0 || (long)imgH * imgW > Integer.MAX_VALUE) {
+			throw new IOException(FName + " has an invalid header or is too large");
+		}
+		loaded = new MappedInts(tempDir, imgH * imgStride);
+		pixels = loaded;
+		try {
+			if (FName.endsWith(ImageProcessor.BINARY_EXTENSION)) {
+				readBinary(FName);
+			} else {
+				readText(FName);
+			}
+		} catch (IOException | RuntimeException e) {
+			loaded.close();
+			throw e;
+		}
+	} // OutOfCoreImage
+	
+	/**
+	 * @return  Height of the image in pixels
+	 */
+	public int getHeight() {
+		return imgH;
+	} // getHeight
+	
+	/**
+	 * @return  Width of the image in pixels
+	 */
+	public int getWidth() {
+		return imgW;
+	} // getWidth
+	
+	/**
+	 * Streams the pixels of a text image into the pixel store
+	 * @param FName  Filename of file containing pixel info
+	 * @throws IOException  If file cannot be read
+	 */
+	private void readText(String FName) throws IOException {
+		try (InputStream in = new FileInputStream(FName)) {
+			ImageProcessor.IntTokenizer tok = new ImageProcessor.IntTokenizer(in, new byte[ImageProcessor.READ_BUFFER_SIZE]);
+			tok.nextInt();  // Height and width are already known
+			tok.nextInt();
+			ImageProcessor.readTextRows(tok, imgH, imgW, rows);
+		}
+	} // readText
+	
+	/**
+	 * Streams the pixels of a binary image into the pixel store
+	 * @param FName  Filename of file containing pixel info
+	 * @throws IOException  If file cannot be read
+	 */
+	private void readBinary(String FName) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.READ)) {
+			if (fc.size() < ImageProcessor.BINARY_HEADER_SIZE + 3L * imgW * imgH) {
+				throw new IOException(FName + " is truncated");
+			}
+			ImageProcessor.readBinaryRows(fc, imgH, imgW, rows);
+		}
+	} // readBinary
+	
+	/**
+	 * Writes the image with its width reduced by k to a file, leaving
+	 * this image unchanged. Files ending in ImageProcessor.BINARY_EXTENSION
+	 * are written as binary images, all others as text.
+	 * @param k  Number of pixels to reduce image width by, less than the width
+	 * @param FName  Filename to write reduced image to
+	 * @throws IOException  If a temporary file or the output cannot be written
+	 */
+	public void writeReduced(int k, String FName) throws IOException {
+		if (k < 0 || k >= imgW) {
+			throw new IllegalArgumentException("Invalid reduction " + k + " for width " + imgW);
+		}
+		// Cuts are removed into the carved store, leaving the loaded pixels untouched
+		int originalW = imgW;
+		try {
+			int[] seam = null;
+			int[] impLo = new int[imgH], impHi = new int[imgH];
+			for (int cnt = 0; cnt < k; cnt++) {
+				if (cnt == 0) {
+					seam = findSeam();
+				} else {
+					// Update cut costs around the previous cut
+					seam = finder.updateSeam(importance, cost, origin, imgW, imgH, seam, impLo, impHi);
+				}
+				removeSeam(seam);
+				updateImportance(seam, impLo, impHi);
+			}
+			if (FName.endsWith(ImageProcessor.BINARY_EXTENSION)) {
+				ImageProcessor.writeBinaryRows(FName, imgH, imgW, rows);
+			} else {
+				ImageProcessor.writeTextRows(FName, imgH, imgW, rows);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();  // Replay store could not be created
+		} finally {
+			pixels = loaded;
+			imgW = originalW;
+		}
+	} // writeReduced
+	
+	/**
+	 * Creates a store for the seam finder's replay of the graph search
+	 * @param size  Number of ints to hold
+	 * @return  New store, closed along with this image
+	 */
+	private SeamFinder.IntStore newReplayStore(int size) {
+		try {
+			MappedInts store = new MappedInts(tempDir, size);
+			replayStores.add(store);
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	} // newReplayStore
+	
+	/**
+	 * Computes importance and cumulative cut costs row by row into
+	 * their stores, keeping only three rows of pixels and two rows
+	 * of costs on the heap, then has the seam finder trace the cut
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 * @throws IOException  If the stores cannot be created
+	 */
+	private int[] findSeam() throws IOException {
+		if (importance == null) {
+			int size = imgH * imgStride;
+			importance = new MappedInts(tempDir, size);
+			cost = new MappedInts(tempDir, size);
+			origin = new MappedInts(tempDir, size);
+		}
+		// Rows above, at and below the current one, laid out like an image with three rows
+		int[] window = new int[3 * imgW], imp = new int[3 * imgW];
+		int[] rowCost = new int[2 * imgW], rowOrigin = new int[2 * imgW];
+		int last = imgW - 1;
+		int up = 0, cur = imgW, down = 2 * imgW, tmp, prev, row;
+		pixels.get((imgH - 1) * imgStride, window, up, imgW);
+		pixels.get(0, window, cur, imgW);
+		for (int i = 0; i < imgH; i++) {
+			// Rows wrap around, so the last row's lower neighbor is the first row
+			pixels.get(((i + 1) % imgH) * imgStride, window, down, imgW);
+			imp[cur] = ImageProcessor.computePDist(window[cur + last], window[cur + Math.min(1, last)])
+					 + ImageProcessor.computePDist(window[up], window[down]);
+			imp[cur + last] = ImageProcessor.computePDist(window[cur + Math.max(last - 1, 0)], window[cur])
+							+ ImageProcessor.computePDist(window[up + last], window[down + last]);
+			if (imgW > 2) {
+				ImportanceKernel.INSTANCE.computeRow(window, cur, up, down, 1, last, imp);
+			}
+			importance.put(i * imgStride, imp, cur, imgW);
+			// Accumulate cost from the row above
+			row = (i & 1) * imgW;
+			if (i == 0) {
+				for (int j = 0; j < imgW; j++) {
+					rowCost[j] = imp[cur + j];
+					rowOrigin[j] = j;
+				}
+			} else {
+				prev = imgW - row;
+				SeamFinder.costRow(rowCost, rowOrigin, prev, row, imp, cur, 1, 0, imgW, imgW);
+			}
+			cost.put(i * imgStride, rowCost, row, imgW);
+			origin.put(i * imgStride, rowOrigin, row, imgW);
+			tmp = up; up = cur; cur = down; down = tmp;
+		}
+		finder.startSearch(imgW, imgH, imgStride, imgStride, 1);
+		return finder.traceSeam(importance, cost, origin, imgW, imgH);
+	} // findSeam
+	
+	/**
+	 * Removes one pixel from every row of the pixels and importance,
+	 * shifting the rest of the row left. The first removal compacts
+	 * the loaded pixels into the carved store.
+	 * @param seam  Column of pixel to remove for each row
+	 * @throws IOException  If the carved store cannot be created
+	 */
+	private void removeSeam(int[] seam) throws IOException {
+		if (carved == null) {
+			carved = new MappedInts(tempDir, imgH * imgStride);
+		}
+		int[] row = (pixels == carved) ? null : new int[imgW];
+		int start, len;
+		for (int i = 0; i < imgH; i++) {
+			start = i * imgStride + seam[i];
+			len = imgW - seam[i] - 1;
+			if (row == null) {
+				pixels.move(start + 1, start, len);
+			} else {
+				pixels.get(i * imgStride, row, 0, imgW);
+				carved.put(i * imgStride, row, 0, seam[i]);
+				carved.put(start, row, seam[i] + 1, len);
+			}
+			importance.move(start + 1, start, len);
+		}
+		pixels = carved;
+		imgW--;
+	} // removeSeam
+	
+	/**
+	 * Recomputes the importance of pixels affected by removing a cut,
+	 * the same pixels ImageProcessor.updateImportance recomputes
+	 * @param seam  Column of pixel removed from each row
+	 * @param impLo  Set to the first recomputed column of each row, excluding the edges
+	 * @param impHi  Set to the last recomputed column of each row, excluding the edges
+	 */
+	private void updateImportance(int[] seam, int[] impLo, int[] impHi) {
+		int up, down, lo, hi, row;
+		int last = imgW - 1;
+		for (int i = 0; i < imgH; i++) {
+			up = seam[(i == 0) ? imgH - 1 : i - 1];
+			down = seam[(i == imgH - 1) ? 0 : i + 1];
+			lo = Math.max(Math.min(seam[i], Math.min(up, down)) - 1, 0);
+			hi = Math.min(Math.max(seam[i], Math.max(up, down)), last);
+			row = i * imgStride;
+			for (int j = lo; j <= hi; j++) {
+				importance.put(row + j, computePixelImportance(i, j));
+			}
+			importance.put(row, computePixelImportance(i, 0));
+			importance.put(row + last, computePixelImportance(i, last));
+			impLo[i] = lo;
+			impHi[i] = hi;
+		}
+	} // updateImportance
+	
+	/**
+	 * @param i  Row of pixel
+	 * @param j  Column of pixel
+	 * @return  XImportance plus YImportance of the pixel, wrapping around the edges
+	 */
+	private int computePixelImportance(int i, int j) {
+		int row = i * imgStride;
+		int left = (j == 0) ? imgW - 1 : j - 1;
+		int right = (j == imgW - 1) ? 0 : j + 1;
+		int up = ((i == 0) ? imgH - 1 : i - 1) * imgStride;
+		int down = ((i == imgH - 1) ? 0 : i + 1) * imgStride;
+		return ImageProcessor.computePDist(pixels.get(row + left), pixels.get(row + right))
+			 + ImageProcessor.computePDist(pixels.get(up + j), pixels.get(down + j));
+	} // computePixelImportance
+	
+	/**
+	 * Deletes the temporary files of the image
+	 * @throws IOException  If a file cannot be deleted
+	 */
+	@Override
+	public void close() throws IOException {
+		for (MappedInts store : new MappedInts[] {loaded, carved, importance, cost, origin}) {
+			if (store != null) {
+				store.close();
+			}
+		}
+		for (MappedInts store : replayStores) {
+			store.close();
+		}
+	} // close
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: java OutOfCoreImage input k output [tempDirectory]");
+			return;
+		}
+		Path dir = Paths.get((args.length > 3) ? args[3] : System.getProperty("java.io.tmpdir"));
+		try (OutOfCoreImage img = new OutOfCoreImage(args[0], dir)) {
+			img.writeReduced(Integer.parseInt(args[1]), args[2]);
+		}
+	} // main
+	
+} // OutOfCoreImage
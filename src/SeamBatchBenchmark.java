@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+
+/**
+ * Compares reducing an image with exact cuts against removing several
+ * cuts per importance computation, reporting the time taken and the
+ * total importance removed by each batch size.
+ *
+ * Usage: java SeamBatchBenchmark image k [batchSize ...]
+ * Batch sizes default to 8 and 32. Batch size 1, the exact mode,
+ * is always run first as the reference.
+ *
+ * @author Weston Berg
+ */
+public class SeamBatchBenchmark {
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java SeamBatchBenchmark image k [batchSize ...]");
+			return;
+		}
+		ImageProcessor img = ImageProcessor.read(args[0]);
+		int k = Integer.parseInt(args[1]);
+		int[] sizes;
+		if (args.length > 2) {
+			sizes = new int[args.length - 1];
+			for (int a = 2; a < args.length; a++) {
+				sizes[a - 1] = Integer.parseInt(args[a]);
+			}
+		} else {
+			sizes = new int[] {1, 8, 32};
+		}
+		sizes[0] = 1;
+		System.out.println("Image: " + img.getHeight() + " x " + img.getWidth() + ", k = " + k);
+		
+		long exactEnergy = 0;
+		for (int size : sizes) {
+			img.setSeamBatchSize(size);
+			long start = System.nanoTime();
+			img.reduce(k);
+			long elapsed = System.nanoTime() - start;
+			long energy = img.getRemovedEnergy();
+			if (size == 1) {
+				exactEnergy = energy;
+			}
+			System.out.printf("  batch %4d  %8.3f s  removed energy %14d  (%6.2f%% of exact)%n",
+							  size, elapsed / 1e9, energy, (exactEnergy == 0) ? 100.0 : 100.0 * energy / exactEnergy);
+		}
+	} // main
+	
+} // SeamBatchBenchmark
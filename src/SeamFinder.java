@@ -0,0 +1,1008 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class for finding the minimum cost vertical cut of an
+ * importance matrix. The pixel graph built by WGraph only has
+ * down, down-left and down-right edges, so the cut is found with a
+ * single row by row cumulative cost pass instead of running
+ * Djikstra's algorithm from every pixel in the top row.
+ *
+ * The returned cut is the one the original java.util.PriorityQueue
+ * based WGraph.S2S picked for the graph built from the same importance
+ * matrix, so reduced images do not change between versions.
+ *
+ * Horizontal cuts are the vertical cuts of the transposed matrix. They are
+ * found by walking the columns of the importance matrix through its stride,
+ * so it never has to be transposed.
+ *
+ * The incremental update, the trace and the tie breaking replay work on
+ * IntStores, so OutOfCoreImage runs the very same code on its memory-mapped
+ * files and finds the same cuts.
+ *
+ * @author Weston Berg
+ */
+public class SeamFinder {
+	
+	/**
+	 * Ints addressed by index, kept in an array or outside the heap
+	 * @author Weston Berg
+	 */
+	abstract static class IntStore {
+		abstract int get(int i);
+		
+		abstract void put(int i, int v);
+		
+		/**
+		 * Copies ints within the store the way System.arraycopy does
+		 * @param from  Index of first int to copy
+		 * @param to  Index to copy the first int to
+		 * @param len  Number of ints to copy
+		 */
+		abstract void move(int from, int to, int len);
+	} // IntStore
+	
+	/**
+	 * Creates the stores of the tie breaking replay
+	 * @author Weston Berg
+	 */
+	interface StoreFactory {
+		/**
+		 * @param size  Number of ints to hold
+		 * @return  New store
+		 */
+		IntStore create(int size);
+	} // StoreFactory
+	
+	/**
+	 * Store backed by an array
+	 * @author Weston Berg
+	 */
+	static final class ArrayStore extends IntStore {
+		private final int[] array;
+		
+		ArrayStore(int[] array) {
+			this.array = array;
+		} // ArrayStore
+		
+		@Override
+		int get(int i) {
+			return array[i];
+		}
+		
+		@Override
+		void put(int i, int v) {
+			array[i] = v;
+		}
+		
+		@Override
+		void move(int from, int to, int len) {
+			System.arraycopy(array, from, array, to, len);
+		}
+	} // ArrayStore
+	
+	/**
+	 * Cumulative importance of the cheapest path from the top row
+	 * to each pixel, importance of the pixel itself included
+	 */
+	private int[] cost;
+	/**
+	 * Id of the leftmost top row pixel a cheapest path to each pixel can
+	 * start from. Ids keep the left to right order of the top row pixels
+	 * when cuts are removed, so they compare the same way columns do.
+	 */
+	private int[] origin;
+	/**
+	 * Id of each top row pixel
+	 */
+	private int[] topId;
+	/**
+	 * Dimensions of the matrix the costs and origins were computed for
+	 */
+	private int costWidth, costHeight, costStride;
+	/**
+	 * Distance in the importance array between neighboring rows and between
+	 * neighboring columns of the matrix searched. A horizontal search swaps
+	 * them, its rows being the columns of the image.
+	 */
+	private int impRowStep, impColStep;
+	// Runs of columns that changed in the row last updated
+	private int[] runLo, runHi, nextLo, nextHi;
+	// Stores of cost and origin the array based searches are updated and traced through
+	private ArrayStore costStore, originStore;
+	/**
+	 * Cost of the cut from the most recent call of findVerticalSeam
+	 */
+	private int seamCost;
+	// Pixels already in a cut of the current findVerticalSeams call are stamped
+	private int[] taken;
+	private int takenStamp;
+	private long[] order;
+	
+	/**
+	 * Pool cost passes of wide matrices run on, null when single threaded
+	 */
+	private final ForkJoinPool pool;
+	private int parallelWidth;
+	private static final int DEFAULT_PARALLEL_WIDTH = 4096;
+	/**
+	 * Number of columns each parallel task works on at least
+	 */
+	private static final int MIN_CHUNK_WIDTH = 512;
+	
+	// Fields needed for replaying the graph search on ties
+	private final StoreFactory stores;
+	private IntStore dist, parent, heap, heapPos;
+	private int replaySize;
+	private int heapSize;
+	/**
+	 * Heap position of settled nodes
+	 */
+	private static final int SETTLED = -1;
+	
+	/**
+	 * Constructs a seam finder. Work arrays are allocated on first
+	 * use and reused for later searches of the same or smaller size.
+	 */
+	public SeamFinder() {
+		this(null);
+	} // SeamFinder
+	
+	/**
+	 * Constructs a seam finder that splits the rows of wide
+	 * matrices into column chunks computed on the given pool.
+	 * @param pool  Pool to compute on, null to stay on the calling thread
+	 */
+	public SeamFinder(ForkJoinPool pool) {
+		this(pool, size -> new ArrayStore(new int[size]));
+	} // SeamFinder
+	
+	/**
+	 * Constructs a seam finder keeping the state of the tie breaking
+	 * replay in stores from the given factory
+	 * @param pool  Pool to compute on, null to stay on the calling thread
+	 * @param stores  Factory of the replay's stores
+	 */
+	SeamFinder(ForkJoinPool pool, StoreFactory stores) {
+		this.pool = pool;
+		this.stores = stores;
+		this.parallelWidth = DEFAULT_PARALLEL_WIDTH;
+		seamCost = Integer.MAX_VALUE;
+	} // SeamFinder
+	
+	/**
+	 * Sets the width below which cost passes stay on the calling thread.
+	 * Narrower rows finish faster than they can be handed out to the pool.
+	 * @param width  Minimum number of columns to compute in parallel
+	 */
+	public void setParallelWidth(int width) {
+		parallelWidth = width;
+	} // setParallelWidth
+	
+	/**
+	 * Finds the minimum cost vertical cut of the given importance matrix.
+	 * @param importance  Importance of each pixel stored row by row
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 */
+	public int[] findVerticalSeam(int[] importance, int width, int height) {
+		return findVerticalSeam(importance, width, height, width);
+	} // findVerticalSeam
+	
+	/**
+	 * Finds the minimum cost vertical cut of the given importance matrix.
+	 * @param importance  Importance of each pixel stored row by row
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 */
+	public int[] findVerticalSeam(int[] importance, int width, int height, int stride) {
+		return findSeam(importance, width, height, stride, stride, 1);
+	} // findVerticalSeam
+	
+	/**
+	 * Finds the minimum cost horizontal cut of the given importance matrix,
+	 * the vertical cut of its transpose.
+	 * @param importance  Importance of each pixel stored row by row
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @return  Array where the j-th entry is the row of the pixel
+	 			in the cut on column j
+	 */
+	public int[] findHorizontalSeam(int[] importance, int width, int height, int stride) {
+		return findSeam(importance, height, width, height, 1, stride);
+	} // findHorizontalSeam
+	
+	/**
+	 * Runs a full cost pass over the matrix searched and traces its cut
+	 * @param importance  Importance of each pixel
+	 * @param width  Number of columns in the matrix searched
+	 * @param height  Number of rows in the matrix searched
+	 * @param stride  Distance between the starts of two rows of the costs
+	 * @param rowStep  Distance in importance between neighboring rows
+	 * @param colStep  Distance in importance between neighboring columns
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i of the matrix searched
+	 */
+	private int[] findSeam(int[] importance, int width, int height, int stride, int rowStep, int colStep) {
+		int size = stride * height;
+		if (cost == null || cost.length < size) {
+			cost = new int[size];
+			origin = new int[size];
+			costStore = new ArrayStore(cost);
+			originStore = new ArrayStore(origin);
+		}
+		startSearch(width, height, stride, rowStep, colStep);
+		// Top row paths consist of the pixel only
+		for (int j = 0; j < width; j++) {
+			cost[j] = importance[j * colStep];
+			origin[j] = j;
+		}
+		// Accumulate cost row by row
+		if (pool != null && width >= parallelWidth) {
+			pool.invoke(new CostPassTask(importance, width, height));
+		} else {
+			for (int i = 1; i < height; i++) {
+				computeCosts(importance, i, 0, width, width);
+			}
+		}
+		return traceSeam(new ArrayStore(importance), costStore, originStore, width, height);
+	} // findSeam
+	
+	/**
+	 * Starts a full search, giving each top row pixel its column as id
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows of the costs
+	 * @param rowStep  Distance in importance between neighboring rows
+	 * @param colStep  Distance in importance between neighboring columns
+	 */
+	void startSearch(int width, int height, int stride, int rowStep, int colStep) {
+		if (topId == null || topId.length < width) {
+			topId = new int[Math.max(width, stride)];
+		}
+		for (int j = 0; j < width; j++) {
+			topId[j] = j;
+		}
+		costWidth = width;
+		costHeight = height;
+		costStride = stride;
+		impRowStep = rowStep;
+		impColStep = colStep;
+	} // startSearch
+	
+	/**
+	 * Computes cumulative cost and origin of a range of pixels in a row
+	 * from the costs of the row above it
+	 * @param importance  Importance of each pixel
+	 * @param i  Row to compute, greater than 0
+	 * @param from  First column to compute
+	 * @param to  Column after the last column to compute
+	 * @param width  Number of columns in the matrix
+	 */
+	private void computeCosts(int[] importance, int i, int from, int to, int width) {
+		int row = i * costStride;
+		costRow(cost, origin, row - costStride, row, importance, i * impRowStep, impColStep, from, to, width);
+	} // computeCosts
+	
+	/**
+	 * Computes cumulative cost and origin of a range of pixels in a row
+	 * from the costs of the row above it, preferring the leftmost origin
+	 * among equal costs
+	 * @param cost  Cumulative costs holding the row above and the row to compute
+	 * @param origin  Origins laid out the same as cost
+	 * @param prevRow  Index in cost of the start of the row above
+	 * @param row  Index in cost of the start of the row to compute
+	 * @param importance  Importance of the pixels
+	 * @param impRow  Index in importance of the start of the row to compute
+	 * @param impStep  Distance in importance between neighboring columns
+	 * @param from  First column to compute
+	 * @param to  Column after the last column to compute
+	 * @param width  Number of columns in the matrix
+	 */
+	static void costRow(int[] cost, int[] origin, int prevRow, int row, int[] importance, int impRow,
+						int impStep, int from, int to, int width) {
+		int best, bestOrigin, k;
+		for (int j = from; j < to; j++) {
+			k = prevRow + j;
+			best = cost[k];
+			bestOrigin = origin[k];
+			if (j != 0) { // Down-right edge into pixel
+				k = prevRow + j - 1;
+				if (cost[k] < best || (cost[k] == best && origin[k] < bestOrigin)) {
+					best = cost[k];
+					bestOrigin = origin[k];
+				}
+			}
+			if (j < width - 1) { // Down-left edge into pixel
+				k = prevRow + j + 1;
+				if (cost[k] < best || (cost[k] == best && origin[k] < bestOrigin)) {
+					best = cost[k];
+					bestOrigin = origin[k];
+				}
+			}
+			cost[row + j] = best + importance[impRow + j * impStep];
+			origin[row + j] = bestOrigin;
+		}
+	} // costRow
+	
+	/**
+	 * Task accumulating costs row by row, splitting each row into
+	 * column chunks computed in parallel. A row only depends on the
+	 * row above it, so the chunks of a row are joined before moving on.
+	 * @author Weston Berg
+	 */
+	private class CostPassTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] importance;
+		private final int width, height;
+		
+		/**
+		 * @param importance  Importance of each pixel
+		 * @param width  Number of columns in the matrix
+		 * @param height  Number of rows in the matrix
+		 */
+		CostPassTask(int[] importance, int width, int height) {
+			this.importance = importance;
+			this.width = width;
+			this.height = height;
+		} // CostPassTask
+		
+		@Override
+		protected void compute() {
+			int chunks = Math.max(1, Math.min(pool.getParallelism(), width / MIN_CHUNK_WIDTH));
+			int chunkWidth = (width + chunks - 1) / chunks;
+			RowChunkTask[] tasks = new RowChunkTask[chunks];
+			for (int c = 0; c < chunks; c++) {
+				tasks[c] = new RowChunkTask(importance, c * chunkWidth,
+											Math.min((c + 1) * chunkWidth, width), width);
+			}
+			for (int i = 1; i < height; i++) {
+				for (RowChunkTask t : tasks) {
+					t.reinitialize();
+					t.row = i;
+				}
+				invokeAll(tasks);
+			}
+		} // compute
+	} // CostPassTask
+	
+	/**
+	 * Task computing one column chunk of a row
+	 * @author Weston Berg
+	 */
+	private class RowChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] importance;
+		private final int from, to, width;
+		private int row;
+		
+		/**
+		 * @param importance  Importance of each pixel
+		 * @param from  First column of chunk
+		 * @param to  Column after the last column of chunk
+		 * @param width  Number of columns in the matrix
+		 */
+		RowChunkTask(int[] importance, int from, int to, int width) {
+			this.importance = importance;
+			this.from = from;
+			this.to = to;
+			this.width = width;
+		} // RowChunkTask
+		
+		@Override
+		protected void compute() {
+			computeCosts(importance, row, from, to, width);
+		} // compute
+	} // RowChunkTask
+	
+	/**
+	 * Finds the minimum cost vertical cut after the given cut was removed
+	 * from the matrix the previous search ran on. Only the cumulative costs
+	 * of pixels next to the removed cut, of pixels whose importance changed
+	 * and of pixels below those that actually changed are recomputed.
+	 * Falls back to a full search if there is no previous search to update.
+	 * @param importance  Importance of each pixel stored row by row,
+	 					  already updated for the removal
+	 * @param width  Number of columns in the matrix after the removal
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @param removed  Cut returned by the previous search that was removed
+	 * @param impLo  For each row, first column whose importance changed
+	 * @param impHi  For each row, last column whose importance changed. Importance
+	 				 of the first and last column may change regardless.
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 */
+	public int[] updateVerticalSeam(int[] importance, int width, int height, int stride,
+									int[] removed, int[] impLo, int[] impHi) {
+		if (cost == null || costWidth != width + 1 || costHeight != height || costStride != stride
+				|| impRowStep != stride || impColStep != 1) {
+			return findVerticalSeam(importance, width, height, stride);
+		}
+		return updateSeam(new ArrayStore(importance), costStore, originStore, width, height, removed, impLo, impHi);
+	} // updateVerticalSeam
+	
+	/**
+	 * Finds the minimum cost horizontal cut after the given cut was removed
+	 * from the matrix the previous search ran on, updating costs the same
+	 * way updateVerticalSeam does. Falls back to a full search if there is
+	 * no previous horizontal search to update.
+	 * @param importance  Importance of each pixel stored row by row,
+	 					  already updated for the removal
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix after the removal
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @param removed  Cut returned by the previous search that was removed
+	 * @param impLo  For each column, first row whose importance changed
+	 * @param impHi  For each column, last row whose importance changed. Importance
+	 				 of the first and last row may change regardless.
+	 * @return  Array where the j-th entry is the row of the pixel
+	 			in the cut on column j
+	 */
+	public int[] updateHorizontalSeam(int[] importance, int width, int height, int stride,
+									  int[] removed, int[] impLo, int[] impHi) {
+		if (cost == null || costWidth != height + 1 || costHeight != width
+				|| impRowStep != 1 || impColStep != stride) {
+			return findHorizontalSeam(importance, width, height, stride);
+		}
+		return updateSeam(new ArrayStore(importance), costStore, originStore, height, width, removed, impLo, impHi);
+	} // updateHorizontalSeam
+	
+	/**
+	 * Updates the costs of the previous search after its cut was removed,
+	 * as updateVerticalSeam describes, then traces the new cut
+	 * @param importance  Importance of each pixel, already updated for the removal
+	 * @param cost  Cumulative costs of the previous search, rows costStride apart
+	 * @param origin  Origins of the previous search, laid out the same as cost
+	 * @param width  Number of columns in the matrix after the removal
+	 * @param height  Number of rows in the matrix
+	 * @param removed  Cut returned by the previous search that was removed
+	 * @param impLo  For each row, first column whose importance changed
+	 * @param impHi  For each row, last column whose importance changed
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 */
+	int[] updateSeam(IntStore importance, IntStore cost, IntStore origin,
+					 int width, int height, int[] removed, int[] impLo, int[] impHi) {
+		if (runLo == null || runLo.length < width + 8) {
+			runLo = new int[width + 8];
+			runHi = new int[width + 8];
+			nextLo = new int[width + 8];
+			nextHi = new int[width + 8];
+		}
+		// Shift out removed cut, keeping the ids of the top row pixels
+		int row, c;
+		for (int i = 0; i < height; i++) {
+			row = i * costStride;
+			c = removed[i];
+			cost.move(row + c + 1, row + c, width - c);
+			origin.move(row + c + 1, row + c, width - c);
+		}
+		System.arraycopy(topId, removed[0] + 1, topId, removed[0], width - removed[0]);
+		costWidth = width;
+		// Recompute rows top to bottom, tracking runs of pixels whose cost changed
+		int runs = 0;
+		int lo, hi, cand, r;
+		for (int i = 0; i < height; i++) {
+			// Collect columns to recompute, previous runs widen by one column per row
+			cand = 0;
+			for (r = 0; r < runs; r++) {
+				nextLo[cand] = runLo[r] - 1;
+				nextHi[cand++] = runHi[r] + 1;
+			}
+			cand = addRange(cand, impLo[i], impHi[i]);
+			if (i > 0) {
+				lo = Math.min(removed[i - 1], removed[i]) - 1;
+				hi = Math.max(removed[i - 1], removed[i]);
+				cand = addRange(cand, lo, hi);
+			}
+			cand = addRange(cand, 0, 0);
+			cand = addRange(cand, width - 1, width - 1);
+			// Recompute merged ranges
+			runs = 0;
+			r = 0;
+			while (r < cand) {
+				lo = Math.max(nextLo[r], 0);
+				hi = nextHi[r++];
+				while (r < cand && nextLo[r] <= hi + 1) {
+					hi = Math.max(hi, nextHi[r++]);
+				}
+				hi = Math.min(hi, width - 1);
+				for (int j = lo; j <= hi; j++) {
+					if (updateCell(importance, cost, origin, i, j, width)) {
+						if (runs > 0 && runHi[runs - 1] == j - 1) {
+							runHi[runs - 1] = j;
+						} else {
+							runLo[runs] = j;
+							runHi[runs++] = j;
+						}
+					}
+				}
+			}
+		}
+		return traceSeam(importance, cost, origin, width, height);
+	} // updateSeam
+	
+	/**
+	 * Inserts a column range into the sorted candidate ranges
+	 * @param cand  Number of candidate ranges
+	 * @param lo  First column of range
+	 * @param hi  Last column of range
+	 * @return  New number of candidate ranges
+	 */
+	private int addRange(int cand, int lo, int hi) {
+		if (lo > hi) {
+			return cand;
+		}
+		int r = cand;
+		while (r > 0 && nextLo[r - 1] > lo) {
+			nextLo[r] = nextLo[r - 1];
+			nextHi[r] = nextHi[r - 1];
+			r--;
+		}
+		nextLo[r] = lo;
+		nextHi[r] = hi;
+		return cand + 1;
+	} // addRange
+	
+	/**
+	 * Recomputes cumulative cost and origin of a single pixel
+	 * @param importance  Importance of each pixel
+	 * @param cost  Cumulative costs, rows costStride apart
+	 * @param origin  Origins, laid out the same as cost
+	 * @param i  Row of pixel
+	 * @param j  Column of pixel
+	 * @param width  Number of columns in the matrix
+	 * @return  True if the cost or origin of the pixel changed
+	 */
+	private boolean updateCell(IntStore importance, IntStore cost, IntStore origin,
+							   int i, int j, int width) {
+		int row = i * costStride;
+		int best, bestOrigin, d, k;
+		if (i == 0) {
+			best = 0;
+			bestOrigin = topId[j];
+		} else {
+			k = row - costStride + j;
+			best = cost.get(k);
+			bestOrigin = origin.get(k);
+			if (j != 0) { // Down-right edge into pixel
+				d = cost.get(k - 1);
+				if (d < best || (d == best && origin.get(k - 1) < bestOrigin)) {
+					best = d;
+					bestOrigin = origin.get(k - 1);
+				}
+			}
+			if (j < width - 1) { // Down-left edge into pixel
+				d = cost.get(k + 1);
+				if (d < best || (d == best && origin.get(k + 1) < bestOrigin)) {
+					best = d;
+					bestOrigin = origin.get(k + 1);
+				}
+			}
+		}
+		best += importance.get(i * impRowStep + j * impColStep);
+		if (cost.get(row + j) == best && origin.get(row + j) == bestOrigin) {
+			return false;
+		}
+		cost.put(row + j, best);
+		origin.put(row + j, bestOrigin);
+		return true;
+	} // updateCell
+	
+	/**
+	 * Picks the cut from the cumulative costs. Takes the leftmost source among
+	 * the cheapest cuts, then the leftmost destination reachable from it at
+	 * that cost, then traces the cut back up the way Djikstra's would.
+	 * @param importance  Importance of each pixel
+	 * @param cost  Cumulative costs, rows costStride apart
+	 * @param origin  Origins, laid out the same as cost
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @return  Array where the i-th entry is the column of the pixel
+	 			in the cut on row i
+	 */
+	int[] traceSeam(IntStore importance, IntStore cost, IntStore origin, int width, int height) {
+		int lastRow = (height - 1) * costStride;
+		int src = 0;
+		int c;
+		seamCost = Integer.MAX_VALUE;
+		for (int j = 0; j < width; j++) {
+			c = cost.get(lastRow + j);
+			if (c < seamCost || (c == seamCost && origin.get(lastRow + j) < src)) {
+				seamCost = c;
+				src = origin.get(lastRow + j);
+			}
+		}
+		int dest = 0;
+		while (cost.get(lastRow + dest) != seamCost || origin.get(lastRow + dest) != src) {
+			dest++;
+		}
+		// Trace cut back up to the source
+		int[] seam = new int[height];
+		seam[height - 1] = dest;
+		int v, need, u, uDist, pDist, p, k, prevRow;
+		boolean tie;
+		for (int i = height - 1; i > 0; i--) {
+			v = seam[i];
+			need = cost.get(i * costStride + v) - importance.get(i * impRowStep + v * impColStep);
+			prevRow = (i - 1) * costStride;
+			p = -1;
+			pDist = 0;
+			tie = false;
+			for (u = Math.max(v - 1, 0); u <= Math.min(v + 1, width - 1); u++) {
+				k = prevRow + u;
+				if (cost.get(k) != need || origin.get(k) != src) {
+					continue;
+				}
+				// Djikstra's keeps the parent settled first, i.e. the one closest to the source
+				uDist = need - importance.get((i - 1) * impRowStep + u * impColStep);
+				if (p < 0 || uDist < pDist) {
+					p = u;
+					pDist = uDist;
+					tie = false;
+				} else if (uDist == pDist) {
+					tie = true;
+				}
+			}
+			if (tie) { // Order depends on the priority queue, replay the search
+				int srcCol = 0;
+				while (topId[srcCol] != src) {
+					srcCol++;
+				}
+				replaySearch(importance, width, height, srcCol, dest, seam);
+				break;
+			}
+			seam[i - 1] = p;
+		}
+		return seam;
+	} // traceSeam
+	
+	/**
+	 * @return  Cost of the cut found by the most recent search
+	 */
+	public int getSeamCost() {
+		return seamCost;
+	} // getSeamCost
+	
+	/**
+	 * Finds several cuts that share no pixel from a single cost pass. The
+	 * first cut is the one findVerticalSeam returns. The others are traced
+	 * from the cheapest remaining bottom row pixels, each step moving to the
+	 * cheapest pixel above not already in a cut, and are dropped if they get
+	 * blocked. Later cuts are therefore only close to minimal.
+	 * @param importance  Importance of each pixel stored row by row
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @param seams  Arrays of length height to write the columns of the cuts to,
+	 				 one per cut wanted
+	 * @return  Number of cuts found, at least 1 and at most seams.length
+	 */
+	public int findVerticalSeams(int[] importance, int width, int height, int stride, int[][] seams) {
+		return findSeams(findVerticalSeam(importance, width, height, stride), width, height, seams);
+	} // findVerticalSeams
+	
+	/**
+	 * Finds several horizontal cuts that share no pixel from a single cost
+	 * pass, the way findVerticalSeams finds vertical ones
+	 * @param importance  Importance of each pixel stored row by row
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param stride  Distance between the starts of two rows in importance
+	 * @param seams  Arrays of length width to write the rows of the cuts to,
+	 				 one per cut wanted
+	 * @return  Number of cuts found, at least 1 and at most seams.length
+	 */
+	public int findHorizontalSeams(int[] importance, int width, int height, int stride, int[][] seams) {
+		return findSeams(findHorizontalSeam(importance, width, height, stride), height, width, seams);
+	} // findHorizontalSeams
+	
+	/**
+	 * Traces further cuts that share no pixel with the first one from the
+	 * costs of the search that found it
+	 * @param first  Cut found by the search
+	 * @param width  Number of columns in the matrix searched
+	 * @param height  Number of rows in the matrix searched
+	 * @param seams  Arrays of length height to write the columns of the cuts to,
+	 				 one per cut wanted
+	 * @return  Number of cuts found, at least 1 and at most seams.length
+	 */
+	private int findSeams(int[] first, int width, int height, int[][] seams) {
+		int stride = costStride;
+		System.arraycopy(first, 0, seams[0], 0, height);
+		int wanted = Math.min(seams.length, width);
+		if (wanted == 1) {
+			return 1;
+		}
+		int size = stride * height;
+		if (taken == null || taken.length < size) {
+			taken = new int[size];
+			takenStamp = 0;
+		}
+		if (++takenStamp == Integer.MAX_VALUE) { // Stamps ran out, start over
+			Arrays.fill(taken, 0);
+			takenStamp = 1;
+		}
+		if (order == null || order.length < width) {
+			order = new long[width];
+		}
+		for (int i = 0; i < height; i++) {
+			taken[i * stride + first[i]] = takenStamp;
+		}
+		// Try bottom row pixels cheapest first, leftmost on equal cost
+		int lastRow = (height - 1) * stride;
+		for (int j = 0; j < width; j++) {
+			order[j] = ((long)cost[lastRow + j] << 32) | j;
+		}
+		Arrays.sort(order, 0, width);
+		int found = 1;
+		int v, u, p, k, prevRow;
+		for (int c = 0; c < width && found < wanted; c++) {
+			int[] seam = seams[found];
+			v = (int)order[c];
+			if (taken[lastRow + v] == takenStamp) {
+				continue;
+			}
+			seam[height - 1] = v;
+			int i = height - 1;
+			for (; i > 0; i--) {
+				prevRow = (i - 1) * stride;
+				p = -1;
+				for (u = Math.max(v - 1, 0); u <= Math.min(v + 1, width - 1); u++) {
+					k = prevRow + u;
+					if (taken[k] != takenStamp && (p < 0 || cost[k] < cost[prevRow + p])) {
+						p = u;
+					}
+				}
+				if (p < 0) { // Blocked by earlier cuts
+					break;
+				}
+				seam[i - 1] = p;
+				v = p;
+			}
+			if (i > 0) {
+				continue;
+			}
+			for (i = 0; i < height; i++) {
+				taken[i * stride + seam[i]] = takenStamp;
+			}
+			found++;
+		}
+		return found;
+	} // findSeams
+	
+	/**
+	 * Runs the search the original WGraph.V2S did on the pixel graph from
+	 * the given source, replicating the node order of the graph and the
+	 * behavior of java.util.PriorityQueue so equal cost parents are
+	 * resolved the same way. Stops once the destination is settled.
+	 * @param importance  Importance of each pixel
+	 * @param width  Number of columns in the matrix
+	 * @param height  Number of rows in the matrix
+	 * @param src  Column of source pixel in top row
+	 * @param dest  Column of destination pixel in bottom row
+	 * @param seam  Array to write the columns of the cut to
+	 */
+	private void replaySearch(IntStore importance, int width, int height, int src, int dest, int[] seam) {
+		int size = width * height;
+		if (dist == null || replaySize < size) {
+			dist = stores.create(size);
+			parent = stores.create(size);
+			heap = stores.create(size);
+			heapPos = stores.create(size);
+			replaySize = size;
+		}
+		/*
+		 * Nodes enter the queue in the order they first appear in the graph's
+		 * edge list, which lists the edges of each pixel left, right then down,
+		 * row by row. The top row is interleaved with the row below it, every
+		 * other row enters as columns 1, 0, 2, 3 and so on.
+		 */
+		heapSize = 0;
+		if (width == 1) {
+			enqueue(width, src);
+			enqueue(0, src);
+		} else {
+			enqueue(width + 1, src);
+			enqueue(0, src);
+			enqueue(width, src);
+			for (int j = 1; j < width; j++) {
+				enqueue(j, src);
+				if (j + 1 < width) {
+					enqueue(width + j + 1, src);
+				}
+			}
+		}
+		int u, v, row;
+		for (int i = 2; i < height; i++) {
+			row = i * width;
+			if (width > 1) {
+				enqueue(row + 1, src);
+			}
+			enqueue(row, src);
+			for (int j = 2; j < width; j++) {
+				enqueue(row + j, src);
+			}
+		}
+		// Perform Djikstra's until destination is settled
+		int destNode = (height - 1) * width + dest;
+		int weight, newDist;
+		while (heapSize > 0) {
+			u = poll();
+			heapPos.put(u, SETTLED);
+			if (u == destNode) {
+				break;
+			}
+			row = u / width;
+			if (row == height - 1) {
+				continue;
+			}
+			for (int e = 0; e < 3; e++) {
+				v = edgeTarget(u, u - row * width, e, width);
+				if (v < 0 || heapPos.get(v) == SETTLED) {
+					continue;
+				}
+				weight = importance.get(row * impRowStep + (u - row * width) * impColStep);
+				if (row == height - 2) {
+					weight += importance.get((row + 1) * impRowStep + (v - (row + 1) * width) * impColStep);
+				}
+				newDist = dist.get(u) + weight;
+				if (dist.get(v) > newDist) {
+					removeAt(heapPos.get(v));
+					dist.put(v, newDist);
+					parent.put(v, u);
+					offer(v);
+				}
+			}
+		}
+		// Trace back path from destination
+		v = destNode;
+		for (int i = height - 1; i >= 0; i--) {
+			seam[i] = v - i * width;
+			v = parent.get(v);
+		}
+	} // replaySearch
+	
+	/**
+	 * Adds a node to the replay queue
+	 * @param u  Node to add
+	 * @param src  Column of source pixel in top row
+	 */
+	private void enqueue(int u, int src) {
+		parent.put(u, -1);
+		if (u == src) {
+			dist.put(u, 0);
+			offer(u);
+		} else {
+			// Nothing is further than an unreached node, so it stays where it is added
+			dist.put(u, Integer.MAX_VALUE);
+			heap.put(heapSize, u);
+			heapPos.put(u, heapSize++);
+		}
+	} // enqueue
+	
+	/**
+	 * Edges of a pixel are listed left, right then down, matching
+	 * the order WGraph adds them in.
+	 * @param u  Index of source pixel
+	 * @param j  Column of source pixel
+	 * @param e  Edge number
+	 * @param width  Number of columns in the matrix
+	 * @return  Index of pixel the edge ends at, -1 if edge does not exist
+	 */
+	private static int edgeTarget(int u, int j, int e, int width) {
+		if (e == 0) {
+			return (j != 0) ? u + width - 1 : -1;
+		} else if (e == 1) {
+			return (j < width - 1) ? u + width + 1 : -1;
+		} else {
+			return u + width;
+		}
+	} // edgeTarget
+	
+	/**
+	 * Adds node to the heap
+	 * @param x  Node to add
+	 */
+	private void offer(int x) {
+		siftUp(heapSize++, x);
+	} // offer
+	
+	/**
+	 * Removes and returns node with the smallest distance
+	 * @return  Node with the smallest distance
+	 */
+	private int poll() {
+		int result = heap.get(0);
+		int n = --heapSize;
+		if (n > 0) {
+			siftDown(0, heap.get(n), n);
+		}
+		return result;
+	} // poll
+	
+	/**
+	 * Removes node at given heap position
+	 * @param i  Position of node in heap
+	 */
+	private void removeAt(int i) {
+		int s = --heapSize;
+		if (s != i) {
+			int moved = heap.get(s);
+			siftDown(i, moved, s);
+			if (heap.get(i) == moved) {
+				siftUp(i, moved);
+			}
+		}
+	} // removeAt
+	
+	/**
+	 * @param k  Position to fill
+	 * @param x  Node to insert
+	 */
+	private void siftUp(int k, int x) {
+		IntStore heap = this.heap, heapPos = this.heapPos, dist = this.dist;
+		int p, e;
+		int d = dist.get(x);
+		while (k > 0) {
+			p = (k - 1) >>> 1;
+			e = heap.get(p);
+			if (d >= dist.get(e)) {
+				break;
+			}
+			heap.put(k, e);
+			heapPos.put(e, k);
+			k = p;
+		}
+		heap.put(k, x);
+		heapPos.put(x, k);
+	} // siftUp
+	
+	/**
+	 * @param k  Position to fill
+	 * @param x  Node to insert
+	 * @param n  Heap size
+	 */
+	private void siftDown(int k, int x, int n) {
+		IntStore heap = this.heap, heapPos = this.heapPos, dist = this.dist;
+		int half = n >>> 1;
+		int child, c, right;
+		int d = dist.get(x);
+		while (k < half) {
+			child = (k << 1) + 1;
+			c = heap.get(child);
+			right = child + 1;
+			if (right < n && dist.get(c) > dist.get(heap.get(right))) {
+				c = heap.get(child = right);
+			}
+			if (d <= dist.get(c)) {
+				break;
+			}
+			heap.put(k, c);
+			heapPos.put(c, k);
+			k = child;
+		}
+		heap.put(k, x);
+		heapPos.put(x, k);
+	} // siftDown
+	
+} // SeamFinder
@@ -9,167 +9,948 @@
  * SOFTWARE.
  */
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.PriorityQueue;
 
 /**
  * Class for finding various shortest paths in a
  * graph where nodes have two dimensions (x, y).
- * 
+ *
  * @author Weston Berg
  */
 public class WGraph {
 	
 	/**
-	 * Class for representing a directed, weighted edge in the graph
+	 * Map from the coordinates of a node to its id. Uses open addressing
+	 * on primitive keys so lookups do not create any objects.
 	 * @author Weston Berg
 	 */
-	private class Edge {
-		private Node node;
-		private int weight;
+	private static final class NodeIndex {
+		/**
+		 * Largest number of slots, a power of two within the array size limit
+		 */
+		private static final int MAX_CAPACITY = 1 << 30;
+		private long[] keys;
+		/**
+		 * Id of the node in each slot plus one, 0 for empty slots
+		 */
+		private int[] ids;
+		private int size;
 		
 		/**
-		 * @param node  Node at which edge ends
-		 * @param weight  Weight of the edge
+		 * @param expected  Number of nodes expected to be added, more can be
 		 */
-		public Edge(Node node, int weight) {
-			this.node = node;
-			this.weight = weight;
+		NodeIndex(int expected) {
+			// Smallest power of two holding twice the expected nodes
+			long wanted = Math.max(2L * expected, 16);
+			int capacity = (wanted >= MAX_CAPACITY) ? MAX_CAPACITY : Integer.highestOneBit((int)wanted - 1) << 1;
+			keys = new long[capacity];
+			ids = new int[capacity];
+			size = 0;
+		} // NodeIndex
+		
+		private static long key(int x, int y) {
+			return ((long)x << 32) | (y & 0xFFFFFFFFL);
 		}
-	} // Edge
+		
+		/**
+		 * @param key  Packed coordinates
+		 * @return  Slot holding key, or the empty slot it belongs in
+		 */
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			int mask = keys.length - 1;
+			int s = (int)(h ^ (h >>> 32)) & mask;
+			while (ids[s] != 0 && keys[s] != key) {
+				s = (s + 1) & mask;
+			}
+			return s;
+		} // slot
+		
+		/**
+		 * @param x  X-coordinate
+		 * @param y  Y-coordinate
+		 * @return  Id of the node, -1 if not in the index
+		 */
+		int get(int x, int y) {
+			return ids[slot(key(x, y))] - 1;
+		} // get
+		
+		/**
+		 * @param x  X-coordinate
+		 * @param y  Y-coordinate
+		 * @param id  Id of the node, not already in the index
+		 */
+		void put(int x, int y, int id) {
+			if (size + 1 > keys.length >> 1) {
+				if (keys.length < MAX_CAPACITY) {
+					grow();
+				} else if (size + 1 == keys.length) { // Keep a slot empty so lookups end
+					throw new IllegalStateException("Too many nodes for the node index");
+				}
+			}
+			long key = key(x, y);
+			int s = slot(key);
+			keys[s] = key;
+			ids[s] = id + 1;
+			size++;
+		} // put
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldIds = ids;
+			keys = new long[oldKeys.length * 2];
+			ids = new int[oldIds.length * 2];
+			int s;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldIds[i] != 0) {
+					s = slot(oldKeys[i]);
+					keys[s] = oldKeys[i];
+					ids[s] = oldIds[i];
+				}
+			}
+		} // grow
+	} // NodeIndex
 	
 	/**
-	 * Class for representing node with 2D coordinates.
-	 * Needs to implement the Comparable interface in
-	 * order to be used in the priority queue.
+	 * Binary min-heap of node ids ordered by their distance. Keeps the
+	 * position of every node in the heap so a node whose distance
+	 * dropped is moved up in place instead of searched for.
 	 * @author Weston Berg
 	 */
-	private class Node implements Comparable<Node>{
-		private int x, y;
-		ArrayList<Edge> edges;
-		// Fields needed for Djikstra's Algorithm
-		private int dist;
-		private Node parent;
-		private boolean visited;
+	private static final class IndexedHeap {
+		private final int[] heap;
+		/**
+		 * Index of each node in heap, -1 for nodes not in the heap
+		 */
+		private final int[] pos;
+		/**
+		 * Distance of each node the heap is ordered by
+		 */
+		private final int[] key;
+		private int size;
 		
 		/**
-		 * @param x  X-coordinate
-		 * @param y  Y-coordinate
+		 * @param key  Distance of each node, indexed by node id
 		 */
-		public Node(int x, int y) {
-			this.x = x;
-			this.y = y;
-			this.edges = new ArrayList<Edge>();
-			this.dist = 0;
-			this.parent = null;
-			this.visited = false;
-		}
-		
-		/*
-		 * (non-Javadoc)
-		 * @see java.lang.Object#equals(java.lang.Object)
-		 */
-	    @Override
-	    public boolean equals (Object obj) {
-	    	Node node;
-	    	try {
-	    		node = (Node)obj;
-	    	} catch(ClassCastException cce) {
-	    		return false;
-	    	}
-	        return (this.x == node.x) && (this.y == node.y);
-	    } // equals
-	    
-	    /*
-	     * (non-Javadoc)
-	     * @see java.lang.Comparable#compareTo(java.lang.Object)
-	     */
-	    @Override
-		public int compareTo(Node node) {
-			return Integer.compare(dist, node.dist);
-		} // compareTo
-	    
-	    /*
-	     * (non-Javadoc)
-	     * @see java.lang.Object#toString()
-	     */
-	    @Override
-	    public String toString() {
-	    	return "(" + x + "," + y + ")";
-	    } // toString
-	} // Node
-
+		IndexedHeap(int[] key) {
+			this.key = key;
+			heap = new int[key.length];
+			pos = new int[key.length];
+			Arrays.fill(pos, -1);
+			size = 0;
+		} // IndexedHeap
+		
+		boolean isEmpty() {
+			return size == 0;
+		}
+		
+		/**
+		 * @return  Distance of the node at the top of the heap
+		 */
+		int peekKey() {
+			return key[heap[0]];
+		}
+		
+		/**
+		 * Removes every node from the heap
+		 */
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				pos[heap[i]] = -1;
+			}
+			size = 0;
+		} // clear
+		
+		/**
+		 * Adds a node to the heap, or restores its place after its
+		 * distance was lowered
+		 * @param v  Id of node
+		 */
+		void insertOrDecrease(int v) {
+			int i = pos[v];
+			if (i < 0) {
+				i = size++;
+			}
+			siftUp(i, v);
+		} // insertOrDecrease
+		
+		/**
+		 * @return  Id of the node with the smallest distance, removed from the heap
+		 */
+		int poll() {
+			int min = heap[0];
+			pos[min] = -1;
+			int last = heap[--size];
+			if (size > 0) {
+				siftDown(0, last);
+			}
+			return min;
+		} // poll
+		
+		private void siftUp(int i, int v) {
+			int d = key[v];
+			int p, u;
+			while (i > 0) {
+				p = (i - 1) >>> 1;
+				u = heap[p];
+				if (key[u] <= d) {
+					break;
+				}
+				heap[i] = u;
+				pos[u] = i;
+				i = p;
+			}
+			heap[i] = v;
+			pos[v] = i;
+		} // siftUp
+		
+		private void siftDown(int i, int v) {
+			int d = key[v];
+			int half = size >>> 1;
+			int c, u;
+			while (i < half) {
+				c = 2 * i + 1;
+				if (c + 1 < size && key[heap[c + 1]] < key[heap[c]]) {
+					c++;
+				}
+				u = heap[c];
+				if (d <= key[u]) {
+					break;
+				}
+				heap[i] = u;
+				pos[u] = i;
+				i = c;
+			}
+			heap[i] = v;
+			pos[v] = i;
+		} // siftDown
+	} // IndexedHeap
+	
+	/**
+	 * Radix heap of node ids ordered by their distance. Only supports
+	 * distances no smaller than the last one polled, which Djikstra's
+	 * guarantees for non-negative weights. Bucket b > 0 holds entries whose
+	 * distance first differs from the last polled distance in bit b - 1,
+	 * so each entry moves down at most 32 times. A node whose distance
+	 * dropped is added again, the old entry is skipped once its distance
+	 * no longer matches.
+	 * @author Weston Berg
+	 */
+	private static final class RadixHeap {
+		private static final int BUCKETS = 33;
+		private final int[][] nodes = new int[BUCKETS][];
+		private final int[][] keys = new int[BUCKETS][];
+		private final int[] size = new int[BUCKETS];
+		/**
+		 * Distance of each node, entries not matching it are stale
+		 */
+		private final int[] key;
+		private int last;
+		private int count;
+		
+		/**
+		 * @param key  Distance of each node, indexed by node id
+		 */
+		RadixHeap(int[] key) {
+			this.key = key;
+			for (int b = 0; b < BUCKETS; b++) {
+				nodes[b] = new int[16];
+				keys[b] = new int[16];
+			}
+		} // RadixHeap
+		
+		/**
+		 * @return  True if no entries, stale or not, are left
+		 */
+		boolean isEmpty() {
+			return count == 0;
+		}
+		
+		/**
+		 * Removes every entry from the heap
+		 */
+		void clear() {
+			Arrays.fill(size, 0);
+			count = 0;
+			last = 0;
+		} // clear
+		
+		/**
+		 * Adds a node at its current distance
+		 * @param v  Id of node
+		 */
+		void insert(int v) {
+			int k = key[v];
+			add(bucket(k), v, k);
+			count++;
+		} // insert
+		
+		private int bucket(int k) {
+			return (k == last) ? 0 : 32 - Integer.numberOfLeadingZeros(k ^ last);
+		}
+		
+		private void add(int b, int v, int k) {
+			int n = size[b];
+			if (n == nodes[b].length) {
+				nodes[b] = Arrays.copyOf(nodes[b], 2 * n);
+				keys[b] = Arrays.copyOf(keys[b], 2 * n);
+			}
+			nodes[b][n] = v;
+			keys[b][n] = k;
+			size[b] = n + 1;
+		} // add
+		
+		/**
+		 * @return  Id of a node with the smallest distance, removed from the
+		 			heap, or -1 if only stale entries were left
+		 */
+		int poll() {
+			int n, v, b, min, k;
+			while (count > 0) {
+				if (size[0] == 0) {
+					// Move the first non-empty bucket down around its smallest distance
+					b = 1;
+					while (size[b] == 0) {
+						b++;
+					}
+					n = size[b];
+					min = Integer.MAX_VALUE;
+					for (int i = 0; i < n; i++) {
+						min = Math.min(min, keys[b][i]);
+					}
+					last = min;
+					size[b] = 0;
+					for (int i = 0; i < n; i++) {
+						v = nodes[b][i];
+						k = keys[b][i];
+						if (key[v] == k) {
+							add(bucket(k), v, k);
+						} else {
+							count--;
+						}
+					}
+					continue;
+				}
+				v = nodes[0][--size[0]];
+				k = keys[0][size[0]];
+				count--;
+				if (key[v] == k) {
+					return v;
+				}
+			}
+			return -1;
+		} // poll
+	} // RadixHeap
+	
 	/**
-	 * Graph represented as adjacency list
+	 * Priority queue used by the single direction searches of V2V, V2S and S2S
+	 * @author Weston Berg
 	 */
-	private ArrayList<Node> adjList;
+	public enum QueueType {
+		/**
+		 * Radix heap when every edge weight is non-negative and at most
+		 * RADIX_MAX_WEIGHT, binary heap otherwise
+		 */
+		AUTO,
+		/**
+		 * Indexed binary heap with decrease-key
+		 */
+		BINARY_HEAP,
+		/**
+		 * Radix heap, falling back to the binary heap if an edge weight is negative
+		 */
+		RADIX_HEAP
+	} // QueueType
+	
+	/**
+	 * Lower bound on the cost of any path between two vertices, used to
+	 * guide A* searches. An estimate that is never more than the true
+	 * cost keeps the paths found minimal.
+	 * @author Weston Berg
+	 */
+	public interface Heuristic {
+		/**
+		 * @param x  X-coordinate of vertex
+		 * @param y  Y-coordinate of vertex
+		 * @param destX  X-coordinate of destination vertex
+		 * @param destY  Y-coordinate of destination vertex
+		 * @return  Lower bound on the cost of a path from the vertex to the destination
+		 */
+		int estimate(int x, int y, int destX, int destY);
+	} // Heuristic
+	
+	/**
+	 * State of a shortest path search. A context can be reused for any
+	 * number of queries, on any graph, without allocating. Arrays are
+	 * only reset lazily: an entry belongs to the current search when its
+	 * stamp equals the current generation. Queries only read the graph,
+	 * so several threads can search one graph at once with a context each.
+	 * @author Weston Berg
+	 */
+	public static final class SearchContext {
+		private int[] dist;
+		private int[] parent;
+		// Generation each node was last reached, settled and marked as a target in
+		private int[] seen;
+		private int[] settled;
+		private int[] target;
+		private int generation;
+		private IndexedHeap heap;
+		// State of the backward half of bidirectional searches, allocated on first use
+		private int[] distB;
+		private int[] parentB;
+		private int[] seenB;
+		private int[] settledB;
+		private IndexedHeap heapB;
+		// Estimated total cost through each node of A* searches, allocated on first use
+		private int[] priority;
+		private IndexedHeap heapA;
+		// Queue of radix heap searches, allocated on first use
+		private RadixHeap radix;
+		/**
+		 * Number of nodes taken off the heap by the last query
+		 */
+		private int settledCount;
+		// Ids of the sources and targets of the current search
+		private int[] sources;
+		private int[] targets;
+		/**
+		 * Coordinates of the vertices of the last path found, x then y for each vertex
+		 */
+		private int[] path;
+		private int pathLength;
+		private int pathCost;
+		
+		/**
+		 * @param capacity  Number of nodes of the largest graph to search
+		 */
+		public SearchContext(int capacity) {
+			allocate(capacity);
+			sources = new int[1];
+			targets = new int[1];
+			path = new int[16];
+			pathCost = Integer.MAX_VALUE;
+		} // SearchContext
+		
+		private void allocate(int capacity) {
+			dist = new int[capacity];
+			parent = new int[capacity];
+			seen = new int[capacity];
+			settled = new int[capacity];
+			target = new int[capacity];
+			heap = new IndexedHeap(dist);
+			distB = null;
+			priority = null;
+			radix = null;
+			generation = 0;
+		} // allocate
+		
+		/**
+		 * Allocates the arrays of the backward search if needed
+		 */
+		void ensureBackward() {
+			if (distB == null) {
+				distB = new int[dist.length];
+				parentB = new int[dist.length];
+				seenB = new int[dist.length];
+				settledB = new int[dist.length];
+				heapB = new IndexedHeap(distB);
+			}
+		} // ensureBackward
+		
+		/**
+		 * Allocates the arrays of A* searches if needed
+		 */
+		void ensurePriority() {
+			if (priority == null) {
+				priority = new int[dist.length];
+				heapA = new IndexedHeap(priority);
+			}
+		} // ensurePriority
+		
+		/**
+		 * Allocates the queue of radix heap searches if needed
+		 */
+		void ensureRadix() {
+			if (radix == null) {
+				radix = new RadixHeap(dist);
+			}
+		} // ensureRadix
+		
+		/**
+		 * Starts a new search on a graph with the given number of nodes
+		 * @param nodes  Number of nodes in the graph
+		 */
+		void reset(int nodes) {
+			if (dist.length < nodes) {
+				allocate(nodes);
+			}
+			heap.clear();
+			if (distB != null) {
+				heapB.clear();
+			}
+			if (priority != null) {
+				heapA.clear();
+			}
+			if (radix != null) {
+				radix.clear();
+			}
+			settledCount = 0;
+			if (++generation == Integer.MAX_VALUE) { // Stamps ran out, start over
+				Arrays.fill(seen, 0);
+				Arrays.fill(settled, 0);
+				Arrays.fill(target, 0);
+				if (distB != null) {
+					Arrays.fill(seenB, 0);
+					Arrays.fill(settledB, 0);
+				}
+				generation = 1;
+			}
+		} // reset
+		
+		int[] sourceBuffer(int n) {
+			if (sources.length < n) {
+				sources = new int[n];
+			}
+			return sources;
+		}
+		
+		int[] targetBuffer(int n) {
+			if (targets.length < n) {
+				targets = new int[n];
+			}
+			return targets;
+		}
+		
+		int[] pathBuffer(int n) {
+			if (path.length < n) {
+				path = new int[Math.max(n, 2 * path.length)];
+			}
+			return path;
+		}
+		
+		void clearPath() {
+			pathLength = 0;
+			pathCost = Integer.MAX_VALUE;
+		}
+		
+		/**
+		 * @return  Number of nodes the last query settled, a measure of the work it did
+		 */
+		public int getSettledCount() {
+			return settledCount;
+		} // getSettledCount
+		
+		/**
+		 * @return  Number of vertices in the last path found, 0 if there was none
+		 */
+		public int getPathLength() {
+			return pathLength;
+		} // getPathLength
+		
+		/**
+		 * @return  Cost of the last path found, Integer.MAX_VALUE if there was none
+		 */
+		public int getPathCost() {
+			return pathCost;
+		} // getPathCost
+		
+		/**
+		 * @return  Coordinates of the vertices of the last path found, x then y
+		 			for each vertex. Only the first 2 * getPathLength() entries are
+		 			part of the path, and the array is reused by the next query.
+		 */
+		public int[] getPath() {
+			return path;
+		} // getPath
+		
+		/**
+		 * @return  Copy of the last path found in the format of V2V, V2S and S2S
+		 */
+		public ArrayList<Integer> getPathList() {
+			ArrayList<Integer> list = new ArrayList<Integer>(2 * pathLength);
+			for (int i = 0; i < 2 * pathLength; i++) {
+				list.add(path[i]);
+			}
+			return list;
+		} // getPathList
+	} // SearchContext
+	
+	/**
+	 * File name extension of binary graph files
+	 */
+	public static final String BINARY_EXTENSION = ".bgraph";
+	/**
+	 * First four bytes of a binary graph file, "BWGR"
+	 */
+	private static final int BINARY_MAGIC = 0x42574752;
+	private static final int BINARY_HEADER_SIZE = 28;
+	/**
+	 * Fewest bytes an edge line of a text graph file takes, "0 0 0 0 0\n"
+	 */
+	private static final int MIN_EDGE_TEXT = 10;
+	/**
+	 * Largest length of the arrays nodes and edges are collected in
+	 */
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+	
+	/**
+	 * Coordinates of each node, indexed by node id. Ids are given out
+	 * in the order nodes first appear in the edge data.
+	 */
+	private int[] nodeX, nodeY;
+	/**
+	 * Outgoing edges of node u are edgeTarget[edgeStart[u]] to
+	 * edgeTarget[edgeStart[u + 1] - 1], in the order they were read
+	 */
+	private int[] edgeStart;
+	private int[] edgeTarget;
+	private int[] edgeWeight;
+	/**
+	 * Id of the node at (x, y) stored at x + y * gridWidth, -1 where there
+	 * is no node. Only used by graphs built from an importance matrix.
+	 */
+	private int[] gridIndex;
+	private int gridWidth, gridHeight;
+	/**
+	 * Id of each node by coordinates for graphs read from a file
+	 */
+	private NodeIndex nodeIndex;
 	private int numNodes;
 	private int numEdges;
+	/**
+	 * Incoming edges of node v are from revSource[revStart[v]] to
+	 * revSource[revStart[v + 1] - 1]. Built on the first bidirectional search.
+	 */
+	private int[] revStart;
+	private int[] revSource;
+	private int[] revWeight;
+	/**
+	 * Largest edge weight the AUTO queue type uses a radix heap for.
+	 * Pixel graphs, with weights up to twice 6 * 255 * 255, qualify.
+	 */
+	public static final int RADIX_MAX_WEIGHT = 1 << 24;
+	/**
+	 * Smallest edge weight in the graph, 0 if there are negative weights or no edges
+	 */
+	private int minEdgeWeight;
+	/**
+	 * Largest edge weight in the graph, 0 if there are no edges
+	 */
+	private int maxEdgeWeight;
+	private boolean negativeWeights;
+	/**
+	 * Priority queue of single direction searches
+	 */
+	private QueueType queueType = QueueType.AUTO;
 	/**
 	 * Tracks cost of minimum path from most recent call of V2V, V2S, or S2S
 	 */
 	private int minPathCost;
+	/**
+	 * Search context of the ArrayList based V2V, V2S and S2S
+	 */
+	private SearchContext defaultCtx;
+	// Nodes and edges collected while the graph is built
+	private int nodeCount;
+	private int edgeCount;
+	private int[] edgeFrom;
 	
 	/**
 	 * Constructs a graph which will then be analyzed for
 	 * shortest paths of different kinds. The graph is stored
-	 * as an adjacency list.
-	 * 
+	 * as an adjacency list. Files ending in BINARY_EXTENSION
+	 * are read as binary graph files written by save.
+	 *
 	 * @param FName  Name of file containing edge info
 	 */
 	public WGraph(String FName) {
-		adjList = new ArrayList<Node>();
 		minPathCost = Integer.MAX_VALUE;
 		
-		try(BufferedReader br = new BufferedReader(new FileReader(FName))) {  // Open file for reading
-			String line;
+		try {
+			if (FName.endsWith(BINARY_EXTENSION)) {
+				readBinary(FName);
+			} else {
+				readText(FName);
+			}
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (edgeStart == null) { // Text file, or nothing was read
+			finishBuild();
+		}
+	} // WGraph
+	
+	/**
+	 * Reads a graph, reporting failures to the caller instead of
+	 * printing them. Files ending in BINARY_EXTENSION are read as
+	 * binary graph files written by save, all others as text.
+	 * @param FName  Name of file containing edge info
+	 * @return  Graph read from the file
+	 * @throws IOException  If the file cannot be read or is malformed
+	 */
+	public static WGraph read(String FName) throws IOException {
+		WGraph graph = new WGraph();
+		if (FName.endsWith(BINARY_EXTENSION)) {
+			graph.readBinary(FName);
+		} else {
+			graph.readText(FName);
+			graph.finishBuild();
+		}
+		return graph;
+	} // read
+	
+	/**
+	 * Empty graph to read a file into
+	 */
+	private WGraph() {
+		minPathCost = Integer.MAX_VALUE;
+	} // WGraph
+	
+	/**
+	 * Reads the edges of a text graph file, the number of nodes and of
+	 * edges followed by one line per edge of the form "ux uy vx vy weight".
+	 * The edges read are collected even if the file ends early, finishBuild
+	 * has to be called afterwards.
+	 * @param FName  Name of file containing edge info
+	 * @throws IOException  If the file cannot be read or is malformed
+	 */
+	private void readText(String FName) throws IOException {
+		try (InputStream in = new FileInputStream(FName)) {  // Open file for reading
+			ImageProcessor.IntTokenizer tok = new ImageProcessor.IntTokenizer(in, new byte[ImageProcessor.READ_BUFFER_SIZE]);
 			int ux, uy, vx, vy, srcIndex, edgeIndex;
 			int weight;
-			String splitLine[];
-			Node srcNode, edgeNode;
 			
-			if((line = br.readLine()) != null) {  // Read in number of nodes in the graph
-				numNodes = Integer.parseUnsignedInt(line);
+			if (tok.hasNext()) {  // Read in number of nodes in the graph
+				numNodes = tok.nextInt();
 			}
-			if((line = br.readLine()) != null) {  // Read in number of edges in the graph
-				numEdges = Integer.parseUnsignedInt(line);
+			if (tok.hasNext()) {  // Read in number of edges in the graph
+				numEdges = tok.nextInt();
 			}
+			// The counts are only trusted as far as the file can hold that many edges
+			long maxEdges = new File(FName).length() / MIN_EDGE_TEXT + 1;
+			int edgeHint = (int)Math.min(Math.max(numEdges, 0), maxEdges);
+			int nodeHint = (int)Math.min(Math.max(numNodes, 0), 2L * edgeHint);
+			startBuild(nodeHint, edgeHint);
+			nodeIndex = new NodeIndex(nodeHint);
 			
-			while((line = br.readLine()) != null) {  // Read in the edge information
-				splitLine = line.split(" ");
-				ux = Integer.parseInt(splitLine[0]);
-				uy = Integer.parseInt(splitLine[1]);
-				vx = Integer.parseInt(splitLine[2]);
-				vy = Integer.parseInt(splitLine[3]);
-				weight = Integer.parseInt(splitLine[4]);				
+			while (tok.hasNext()) {  // Read in the edge information
+				ux = tok.nextInt();
+				uy = tok.nextInt();
+				vx = tok.nextInt();
+				vy = tok.nextInt();
+				weight = tok.nextInt();
 				// Add new node or update existing
-				edgeNode = new Node(vx, vy);
-				edgeIndex = adjList.indexOf(edgeNode);
-				if(!(edgeIndex < 0)) { // Check if destination vertex already exists
-					edgeNode = adjList.get(edgeIndex);
-				} else {
-					adjList.add(edgeNode);
+				edgeIndex = nodeIndex.get(vx, vy);
+				if (edgeIndex < 0) { // Check if destination vertex already exists
+					edgeIndex = addNode(vx, vy);
+					nodeIndex.put(vx, vy, edgeIndex);
 				}
-				srcNode = new Node(ux, uy);
-				srcIndex = adjList.indexOf(srcNode);
-				if(srcIndex < 0) { // Check if src node already exists
-					srcNode.edges.add(new Edge(edgeNode, weight));
-					adjList.add(srcNode);
-				} else {
-					adjList.get(srcIndex).edges.add(new Edge(edgeNode, weight));
+				srcIndex = nodeIndex.get(ux, uy);
+				if (srcIndex < 0) { // Check if src node already exists
+					srcIndex = addNode(ux, uy);
+					nodeIndex.put(ux, uy, srcIndex);
 				}
+				addEdge(srcIndex, edgeIndex, weight);
 			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-	} // WGraph
+	} // readText
+	
+	/**
+	 * Reads a binary graph file, made up of BINARY_MAGIC, the number of
+	 * nodes and edges given in the text file the graph was read from, the
+	 * number of nodes and edges in the graph, the width and height of the
+	 * grid (-1 for graphs read from a text file), then the arrays nodeX,
+	 * nodeY, edgeStart, edgeTarget and edgeWeight, all as big-endian ints.
+	 * The arrays are mapped into memory and copied in bulk, so loading
+	 * costs little more than reading the file.
+	 * @param FName  Name of binary graph file
+	 * @throws IOException  If the file cannot be read or is not a valid binary graph file
+	 */
+	private void readBinary(String FName) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (fc.read(header) < 0) {
+					break;
+				}
+			}
+			header.flip();
+			if (header.remaining() < BINARY_HEADER_SIZE || header.getInt() != BINARY_MAGIC) {
+				throw new IOException(FName + " is not a binary graph file");
+			}
+			int fileNodes = header.getInt();
+			int fileEdges = header.getInt();
+			int nodes = header.getInt();
+			int edges = header.getInt();
+			int width = header.getInt();
+			int height = header.getInt();
+			if (nodes < 0 || edges < 0 || (width < 0) != (height < 0)
+					|| fc.size() < BINARY_HEADER_SIZE + 4L * (3L * nodes + 1 + 2L * edges)) {
+				throw new IOException(FName + " is truncated or has an invalid header");
+			}
+			long offset = BINARY_HEADER_SIZE;
+			int[] x = readInts(fc, offset, nodes);
+			offset += 4L * nodes;
+			int[] y = readInts(fc, offset, nodes);
+			offset += 4L * nodes;
+			int[] start = readInts(fc, offset, nodes + 1);
+			offset += 4L * (nodes + 1);
+			int[] target = readInts(fc, offset, edges);
+			offset += 4L * edges;
+			int[] weight = readInts(fc, offset, edges);
+			
+			// Check the edges so a corrupt file fails here instead of in a search
+			if (start[0] != 0 || start[nodes] != edges) {
+				throw new IOException(FName + " has invalid edge offsets");
+			}
+			for (int u = 0; u < nodes; u++) {
+				if (start[u] > start[u + 1]) {
+					throw new IOException(FName + " has invalid edge offsets");
+				}
+			}
+			for (int e = 0; e < edges; e++) {
+				if (target[e] < 0 || target[e] >= nodes) {
+					throw new IOException(FName + " has an edge to a node not in the graph");
+				}
+			}
+			// Rebuild the index of nodes by coordinates
+			int[] grid = null;
+			NodeIndex index = null;
+			if (width >= 0) {
+				if ((long)width * height > Integer.MAX_VALUE) {
+					throw new IOException(FName + " has an invalid grid size");
+				}
+				grid = new int[width * height];
+				Arrays.fill(grid, -1);
+				for (int u = 0; u < nodes; u++) {
+					if (x[u] < 0 || x[u] >= width || y[u] < 0 || y[u] >= height || grid[x[u] + y[u] * width] >= 0) {
+						throw new IOException(FName + " has a node outside the grid or twice");
+					}
+					grid[x[u] + y[u] * width] = u;
+				}
+			} else {
+				index = new NodeIndex(nodes);
+				for (int u = 0; u < nodes; u++) {
+					if (index.get(x[u], y[u]) >= 0) {
+						throw new IOException(FName + " has a node twice");
+					}
+					index.put(x[u], y[u], u);
+				}
+			}
+			
+			numNodes = fileNodes;
+			numEdges = fileEdges;
+			nodeCount = nodes;
+			edgeCount = edges;
+			nodeX = x;
+			nodeY = y;
+			edgeStart = start;
+			edgeTarget = target;
+			edgeWeight = weight;
+			gridIndex = grid;
+			gridWidth = Math.max(width, 0);
+			gridHeight = Math.max(height, 0);
+			nodeIndex = index;
+			computeWeightRange();
+		}
+	} // readBinary
+	
+	/**
+	 * Copies ints out of a file through memory mappings
+	 * @param fc  File to read from
+	 * @param offset  Position in the file of the first int
+	 * @param count  Number of ints to read
+	 * @return  Ints read
+	 * @throws IOException  If the file cannot be mapped
+	 */
+	private static int[] readInts(FileChannel fc, long offset, int count) throws IOException {
+		int[] values = new int[count];
+		// A single mapping is limited to 2GB
+		int perMap = (int)(ImageProcessor.MAX_MAP_SIZE / 4);
+		int n;
+		for (int i = 0; i < count; i += n) {
+			n = Math.min(perMap, count - i);
+			fc.map(MapMode.READ_ONLY, offset + 4L * i, 4L * n).asIntBuffer().get(values, i, n);
+		}
+		return values;
+	} // readInts
+	
+	/**
+	 * Writes the graph to a binary graph file, in the format read by the
+	 * constructor for files ending in BINARY_EXTENSION, so an expensive
+	 * graph build can be reused by later runs
+	 * @param FName  Name of file to write to
+	 * @throws IOException  If the file cannot be written
+	 */
+	public void save(String FName) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(FName), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocate(ImageProcessor.WRITE_BUFFER_SIZE);
+			buf.putInt(BINARY_MAGIC).putInt(numNodes).putInt(numEdges).putInt(nodeCount).putInt(edgeCount);
+			buf.putInt((gridIndex == null) ? -1 : gridWidth).putInt((gridIndex == null) ? -1 : gridHeight);
+			writeInts(fc, buf, nodeX, nodeCount);
+			writeInts(fc, buf, nodeY, nodeCount);
+			writeInts(fc, buf, edgeStart, nodeCount + 1);
+			writeInts(fc, buf, edgeTarget, edgeCount);
+			writeInts(fc, buf, edgeWeight, edgeCount);
+			flush(fc, buf);
+		}
+	} // save
+	
+	/**
+	 * @param fc  File to write to
+	 * @param buf  Buffer to write through, flushed to the file when full
+	 * @param values  Ints to write
+	 * @param count  Number of ints from the start of values to write
+	 * @throws IOException  If the file cannot be written
+	 */
+	private static void writeInts(FileChannel fc, ByteBuffer buf, int[] values, int count) throws IOException {
+		int n;
+		for (int i = 0; i < count; i += n) {
+			if (buf.remaining() < 4) {
+				flush(fc, buf);
+			}
+			n = Math.min(count - i, buf.remaining() / 4);
+			buf.asIntBuffer().put(values, i, n);
+			buf.position(buf.position() + 4 * n);
+		}
+	} // writeInts
+	
+	private static void flush(FileChannel fc, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			fc.write(buf);
+		}
+		buf.clear();
+	} // flush
+	
+	/**
+	 * Converts a text graph file to a binary graph file
+	 * @param textFName  Name of text graph file to read
+	 * @param binaryFName  Name of binary graph file to write
+	 * @throws IOException  If either file cannot be accessed or the text file is malformed
+	 */
+	public static void convertToBinary(String textFName, String binaryFName) throws IOException {
+		WGraph graph = new WGraph();
+		graph.readText(textFName);
+		graph.finishBuild();
+		graph.save(binaryFName);
+	} // convertToBinary
 	
 	/**
 	 * Only works for graphs with the consistent edge behavior defined
@@ -177,131 +958,733 @@ public class WGraph {
 	 * @param importance  2D matrix of importance values for each node (pixel)
 	 */
 	public WGraph(List<ArrayList<Integer>> importance) {
-		int[] edgeData;
-		adjList = new ArrayList<Node>();
 		numNodes = 0;
 		numEdges = 0;
-		// int[] containing edge info in format:
-		// 0: ux, 1: uy, 2: vx, 4: vy, 5: weight
-		// where u is source vertex and v is destination vertex
-		ArrayList<int[]> edgeList = new ArrayList<int[]>();
+		minPathCost = Integer.MAX_VALUE;
+		gridHeight = importance.size();
+		gridWidth = 0;
+		for (List<Integer> row : importance) {
+			gridWidth = Math.max(gridWidth, row.size());
+		}
+		gridIndex = new int[gridWidth * gridHeight];
+		Arrays.fill(gridIndex, -1);
+		startBuild(gridWidth * gridHeight, 3 * gridWidth * gridHeight);
 		int nextRow, rowCnt, colCnt, curImp;
 		rowCnt = importance.size() - 1;
-		// Construct edge data from image data
+		List<Integer> curRow, lastRow;
+		// Construct edges from image data
 		for(int i = 0; i < rowCnt; i++) {
-			colCnt = importance.get(i).size() - 1;
+			curRow = importance.get(i);
+			colCnt = curRow.size() - 1;
 			nextRow = i + 1;
+			lastRow = (i != (rowCnt - 1)) ? null : importance.get(nextRow);
 			for (int j = 0; j <= colCnt; j++) {
-				curImp = importance.get(i).get(j);
+				curImp = curRow.get(j);
 				if (j != 0) { // Left edge valid
-					edgeData = new int[5];
-					edgeData[0] = j;
-					edgeData[1] = i;
-					edgeData[2] = j-1;
-					edgeData[3] = nextRow;
-					if (i != (rowCnt - 1)) {
-						edgeData[4] = curImp;
-					} else {
-						edgeData[4] = (curImp + importance.get(nextRow).get(j-1));
-					}
-					edgeList.add(edgeData);
-					numEdges++;
+					addGridEdge(j, i, j-1, nextRow, (lastRow == null) ? curImp : curImp + lastRow.get(j-1));
 				}
 				if (j < colCnt) { // Right edge valid
-					edgeData = new int[5];
-					edgeData[0] = j;
-					edgeData[1] = i;
-					edgeData[2] = j+1;
-					edgeData[3] = nextRow;
-					if (i != (rowCnt - 1)) {
-						edgeData[4] = curImp;
-					} else {
-						edgeData[4] = (curImp + importance.get(nextRow).get(j+1));
-					}
-					edgeList.add(edgeData);
-					numEdges++;
+					addGridEdge(j, i, j+1, nextRow, (lastRow == null) ? curImp : curImp + lastRow.get(j+1));
 				}
 				// Down edge always valid
-				edgeData = new int[5];
-				edgeData[0] = j;
-				edgeData[1] = i;
-				edgeData[2] = j;
-				edgeData[3] = nextRow;
-				if (i != (rowCnt - 1)) {
-					edgeData[4] = curImp;
-				} else {
-					edgeData[4] = (curImp + importance.get(nextRow).get(j));
-				}
-				edgeList.add(edgeData);
-				numEdges++;
-			}
-		}
-		// Construct graph from created edge data
-		Node srcNode, edgeNode;
-		int srcIndex, edgeIndex;
-		for (int[] edge : edgeList) {
-			// Add new node or update existing
-			edgeNode = new Node(edge[2], edge[3]);
-			edgeIndex = adjList.indexOf(edgeNode);
-			if(!(edgeIndex < 0)) { // Check if destination vertex already exists
-				edgeNode = adjList.get(edgeIndex);
-			} else {
-				adjList.add(edgeNode);
-			}
-			srcNode = new Node(edge[0], edge[1]);
-			srcIndex = adjList.indexOf(srcNode);
-			if(srcIndex < 0) { // Check if src node already exists
-				srcNode.edges.add(new Edge(edgeNode, edge[4]));
-				adjList.add(srcNode);
-			} else {
-				adjList.get(srcIndex).edges.add(new Edge(edgeNode, edge[4]));
+				addGridEdge(j, i, j, nextRow, (lastRow == null) ? curImp : curImp + lastRow.get(j));
 			}
 		}
-		numNodes = adjList.size();
+		finishBuild();
+		numNodes = nodeCount;
+		numEdges = edgeCount;
 	} // WGraph
 	
 	/**
-	 * Implementation of Djikstra's shortest path algorithm
+	 * Allocates the arrays nodes and edges are collected in
+	 * @param nodes  Expected number of nodes
+	 * @param edges  Expected number of edges
+	 */
+	private void startBuild(int nodes, int edges) {
+		nodeX = new int[Math.max(nodes, 16)];
+		nodeY = new int[nodeX.length];
+		edgeFrom = new int[Math.max(edges, 16)];
+		edgeTarget = new int[edgeFrom.length];
+		edgeWeight = new int[edgeFrom.length];
+		nodeCount = 0;
+		edgeCount = 0;
+	} // startBuild
+	
+	/**
+	 * @param x  X-coordinate
+	 * @param y  Y-coordinate
+	 * @return  Id given to the new node
+	 */
+	private int addNode(int x, int y) {
+		if (nodeCount == nodeX.length) {
+			nodeX = Arrays.copyOf(nodeX, grownLength(nodeCount));
+			nodeY = Arrays.copyOf(nodeY, nodeX.length);
+		}
+		nodeX[nodeCount] = x;
+		nodeY[nodeCount] = y;
+		return nodeCount++;
+	} // addNode
+	
+	/**
+	 * @param u  Id of source node
+	 * @param v  Id of destination node
+	 * @param weight  Weight of the edge
+	 */
+	private void addEdge(int u, int v, int weight) {
+		if (edgeCount == edgeFrom.length) {
+			edgeFrom = Arrays.copyOf(edgeFrom, grownLength(edgeCount));
+			edgeTarget = Arrays.copyOf(edgeTarget, edgeFrom.length);
+			edgeWeight = Arrays.copyOf(edgeWeight, edgeFrom.length);
+		}
+		edgeFrom[edgeCount] = u;
+		edgeTarget[edgeCount] = v;
+		edgeWeight[edgeCount] = weight;
+		edgeCount++;
+	} // addEdge
+	
+	/**
+	 * @param length  Length of a full array
+	 * @return  Length to grow the array to, doubling up to MAX_ARRAY_LENGTH
+	 */
+	private static int grownLength(int length) {
+		if (length >= MAX_ARRAY_LENGTH) {
+			throw new IllegalStateException("Too many nodes or edges");
+		}
+		return (int)Math.min(2L * length, MAX_ARRAY_LENGTH);
+	} // grownLength
+	
+	/**
+	 * Adds an edge between two pixels, adding the pixels as nodes
+	 * if they are not in the graph yet
 	 * @param ux  Source vertex x-coordinate
 	 * @param uy  Source vertex y-coordinate
 	 * @param vx  Destination vertex x-coordinate
 	 * @param vy  Destination vertex y-coordinate
+	 * @param weight  Weight of the edge
 	 */
-	private void CalculateShortestPaths(Node src) {
-		Node curNode;
-		PriorityQueue<Node> pq = new PriorityQueue<Node>();
-		
-		// Initialize priority queue values
-		for (Node n : adjList) {
-			if(n.equals(src)) {
-				n.dist = 0;
-			} else {
-				n.dist = Integer.MAX_VALUE;
+	private void addGridEdge(int ux, int uy, int vx, int vy, int weight) {
+		int v = gridIndex[vx + vy * gridWidth];
+		if (v < 0) {
+			v = addNode(vx, vy);
+			gridIndex[vx + vy * gridWidth] = v;
+		}
+		int u = gridIndex[ux + uy * gridWidth];
+		if (u < 0) {
+			u = addNode(ux, uy);
+			gridIndex[ux + uy * gridWidth] = u;
+		}
+		addEdge(u, v, weight);
+	} // addGridEdge
+	
+	/**
+	 * Sorts the collected edges by source node into the
+	 * edgeStart/edgeTarget/edgeWeight arrays, keeping the order
+	 * the edges of each node were added in
+	 */
+	private void finishBuild() {
+		if (nodeX == null) { // Nothing was read
+			startBuild(0, 0);
+		}
+		nodeX = Arrays.copyOf(nodeX, nodeCount);
+		nodeY = Arrays.copyOf(nodeY, nodeCount);
+		edgeStart = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			edgeStart[edgeFrom[e] + 1]++;
+		}
+		for (int u = 0; u < nodeCount; u++) {
+			edgeStart[u + 1] += edgeStart[u];
+		}
+		int[] next = Arrays.copyOf(edgeStart, nodeCount);
+		int[] targets = new int[edgeCount];
+		int[] weights = new int[edgeCount];
+		int pos;
+		for (int e = 0; e < edgeCount; e++) {
+			pos = next[edgeFrom[e]]++;
+			targets[pos] = edgeTarget[e];
+			weights[pos] = edgeWeight[e];
+		}
+		edgeTarget = targets;
+		edgeWeight = weights;
+		edgeFrom = null;
+		computeWeightRange();
+	} // finishBuild
+	
+	/**
+	 * Finds the smallest and largest edge weights the searches pick their queue by
+	 */
+	private void computeWeightRange() {
+		minEdgeWeight = (edgeCount == 0) ? 0 : Integer.MAX_VALUE;
+		maxEdgeWeight = 0;
+		for (int e = 0; e < edgeCount; e++) {
+			minEdgeWeight = Math.min(minEdgeWeight, edgeWeight[e]);
+			maxEdgeWeight = Math.max(maxEdgeWeight, edgeWeight[e]);
+		}
+		negativeWeights = minEdgeWeight < 0;
+		minEdgeWeight = Math.max(minEdgeWeight, 0);
+	} // computeWeightRange
+	
+	/**
+	 * @param x  X-coordinate
+	 * @param y  Y-coordinate
+	 * @return  Id of the node at the given coordinates, -1 if there is none
+	 */
+	private int nodeId(int x, int y) {
+		if (gridIndex != null) {
+			if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+				return -1;
+			}
+			return gridIndex[x + y * gridWidth];
+		}
+		return (nodeIndex == null) ? -1 : nodeIndex.get(x, y);
+	} // nodeId
+	
+	/**
+	 * Creates a search context sized for this graph. Each thread
+	 * querying the graph needs its own context.
+	 * @return  New search context
+	 */
+	public SearchContext newSearchContext() {
+		return new SearchContext(nodeCount);
+	} // newSearchContext
+	
+	/**
+	 * Select the priority queue of the single direction searches of V2V,
+	 * V2S and S2S. Both queues find paths of the same cost, but may pick
+	 * different ones of several equal cost paths.
+	 * @param type  Queue to use, AUTO by default
+	 */
+	public void setQueueType(QueueType type) {
+		queueType = type;
+	} // setQueueType
+	
+	/**
+	 * @return  True if searches use the radix heap
+	 */
+	private boolean useRadixHeap() {
+		if (negativeWeights) {
+			return false;
+		}
+		switch (queueType) {
+		case RADIX_HEAP:
+			return true;
+		case BINARY_HEAP:
+			return false;
+		default:
+			return maxEdgeWeight <= RADIX_MAX_WEIGHT;
+		}
+	} // useRadixHeap
+	
+	/**
+	 * Implementation of Djikstra's shortest path algorithm. All sources in
+	 * ctx start at distance 0, as if reached from one virtual source. Nodes
+	 * enter the heap when first reached, and the search stops once the
+	 * first or every target in ctx is settled, so nodes further away are
+	 * never visited.
+	 * @param ctx  Search context holding the source and target ids
+	 * @param srcCnt  Number of source ids in ctx, -1 entries are skipped
+	 * @param targetCnt  Number of target ids in ctx, -1 entries are skipped.
+	 					 0 to settle every node.
+	 * @param firstTarget  True to stop at the first settled target, false
+	 					   to stop once all targets are settled
+	 * @return  Id of the last target settled, -1 if no target was reached
+	 */
+	private int CalculateShortestPaths(SearchContext ctx, int srcCnt, int targetCnt, boolean firstTarget) {
+		int curNode, v, newDist;
+		int lastTarget = -1;
+		ctx.reset(nodeCount);
+		int gen = ctx.generation;
+		int[] dist = ctx.dist;
+		int[] parent = ctx.parent;
+		int[] seen = ctx.seen;
+		int[] settled = ctx.settled;
+		int[] target = ctx.target;
+		IndexedHeap heap = ctx.heap;
+		// Mark the distinct targets still to be settled
+		int remaining = (targetCnt == 0) ? -1 : 0;
+		for (int t = 0; t < targetCnt; t++) {
+			v = ctx.targets[t];
+			if (v >= 0 && target[v] != gen) {
+				target[v] = gen;
+				remaining++;
+			}
+		}
+		if (firstTarget && remaining > 0) {
+			remaining = 1;
+		}
+		if (useRadixHeap()) {
+			return radixShortestPaths(ctx, srcCnt, remaining);
+		}
+		for (int i = 0; i < srcCnt; i++) {
+			v = ctx.sources[i];
+			if (v >= 0 && seen[v] != gen) {
+				seen[v] = gen;
+				dist[v] = 0;
+				parent[v] = -1;
+				heap.insertOrDecrease(v);
+			}
+		}
+		// Perform Djikstra's
+		while (!heap.isEmpty()) {
+			curNode = heap.poll();
+			settled[curNode] = gen;
+			ctx.settledCount++;
+			if (target[curNode] == gen) {
+				lastTarget = curNode;
+				if (--remaining == 0) {
+					break;
+				}
+			}
+			for (int e = edgeStart[curNode]; e < edgeStart[curNode + 1]; e++) {
+				v = edgeTarget[e];
+				newDist = dist[curNode] + edgeWeight[e];
+				if (seen[v] != gen) {
+					seen[v] = gen;
+					dist[v] = newDist;
+					parent[v] = curNode;
+					heap.insertOrDecrease(v);
+				} else if (settled[v] != gen && dist[v] > newDist) {
+					dist[v] = newDist;
+					parent[v] = curNode;
+					heap.insertOrDecrease(v);
+				}
+			}
+		}
+		return lastTarget;
+	} // CalculateShortestPaths
+	
+	/**
+	 * Djikstra's shortest path algorithm using a radix heap, continuing
+	 * CalculateShortestPaths once the targets are marked
+	 * @param ctx  Search context holding the source ids and marked targets
+	 * @param srcCnt  Number of source ids in ctx, -1 entries are skipped
+	 * @param remaining  Number of targets to settle before stopping, -1 to settle every node
+	 * @return  Id of the last target settled, -1 if no target was reached
+	 */
+	private int radixShortestPaths(SearchContext ctx, int srcCnt, int remaining) {
+		int curNode, v, newDist;
+		int lastTarget = -1;
+		int gen = ctx.generation;
+		int[] dist = ctx.dist;
+		int[] parent = ctx.parent;
+		int[] seen = ctx.seen;
+		int[] settled = ctx.settled;
+		int[] target = ctx.target;
+		ctx.ensureRadix();
+		RadixHeap heap = ctx.radix;
+		for (int i = 0; i < srcCnt; i++) {
+			v = ctx.sources[i];
+			if (v >= 0 && seen[v] != gen) {
+				seen[v] = gen;
+				dist[v] = 0;
+				parent[v] = -1;
+				heap.insert(v);
 			}
-			n.parent = null;
-			n.visited = false;
-			pq.add(n);
 		}
 		// Perform Djikstra's
-		while (!pq.isEmpty()) {
-			curNode = pq.poll();
-			curNode.visited = true;
-			for (Edge e : curNode.edges) {
-				if (!e.node.visited) {
-					if (e.node.dist > (curNode.dist + e.weight)) {
-						pq.remove(e.node);
-						e.node.dist = curNode.dist + e.weight;
-						e.node.parent = curNode;
-						pq.add(e.node);	
+		while (!heap.isEmpty()) {
+			curNode = heap.poll();
+			if (curNode < 0) {
+				break;
+			}
+			settled[curNode] = gen;
+			ctx.settledCount++;
+			if (target[curNode] == gen) {
+				lastTarget = curNode;
+				if (--remaining == 0) {
+					break;
+				}
+			}
+			for (int e = edgeStart[curNode]; e < edgeStart[curNode + 1]; e++) {
+				v = edgeTarget[e];
+				newDist = dist[curNode] + edgeWeight[e];
+				if (seen[v] != gen) {
+					seen[v] = gen;
+					dist[v] = newDist;
+					parent[v] = curNode;
+					heap.insert(v);
+				} else if (settled[v] != gen && dist[v] > newDist) {
+					dist[v] = newDist;
+					parent[v] = curNode;
+					heap.insert(v);
+				}
+			}
+		}
+		return lastTarget;
+	} // radixShortestPaths
+	
+	/**
+	 * Stores the path from a source of the last search to the given node
+	 * in ctx, filling the path array from the back
+	 * @param ctx  Search context of the last search
+	 * @param v  Id of the last node of the path
+	 * @return  Cost of the path
+	 */
+	private int tracePath(SearchContext ctx, int v) {
+		int len = 0;
+		for (int u = v; u >= 0; u = ctx.parent[u]) {
+			len++;
+		}
+		int[] path = ctx.pathBuffer(2 * len);
+		int i = 2 * len;
+		for (int u = v; u >= 0; u = ctx.parent[u]) {
+			path[--i] = nodeY[u];
+			path[--i] = nodeX[u];
+		}
+		ctx.pathLength = len;
+		ctx.pathCost = ctx.dist[v];
+		return ctx.pathCost;
+	} // tracePath
+	
+	/**
+	 * Calculates the shortest path using Djikstra's algorithm from specified
+	 * source vertex to specified destination vertex. The path is left in ctx.
+	 * @param ctx  Search context of the calling thread
+	 * @param ux  Source vertex x-coordinate
+	 * @param uy  Source vertex y-coordinate
+	 * @param vx  Destination vertex x-coordinate
+	 * @param vy  Destination vertex y-coordinate
+	 * @return  Cost of the path, Integer.MAX_VALUE if there is none
+	 */
+	public int V2V(SearchContext ctx, int ux, int uy, int vx, int vy) {
+		ctx.clearPath();
+		// Check if source and destination are equal
+		if (ux == vx && uy == vy) {
+			return singleVertexPath(ctx, ux, uy);
+		}
+		int src = nodeId(ux, uy);
+		int dest = nodeId(vx, vy);
+		if (src < 0 || dest < 0) {
+			return ctx.pathCost;
+		}
+		// Calculate the shortest paths, stopping once the destination is settled
+		ctx.sourceBuffer(1)[0] = src;
+		ctx.targetBuffer(1)[0] = dest;
+		if (CalculateShortestPaths(ctx, 1, 1, true) < 0) {
+			return ctx.pathCost;
+		}
+		return tracePath(ctx, dest);
+	} // V2V
+	
+	/**
+	 * Calculates the same shortest path cost as V2V by searching forward
+	 * from the source and backward from the destination at the same time,
+	 * stopping once the two searches can no longer find a cheaper path
+	 * between them. Usually settles far fewer nodes than V2V when the
+	 * destination is close. The path is left in ctx.
+	 * @param ctx  Search context of the calling thread
+	 * @param ux  Source vertex x-coordinate
+	 * @param uy  Source vertex y-coordinate
+	 * @param vx  Destination vertex x-coordinate
+	 * @param vy  Destination vertex y-coordinate
+	 * @return  Cost of the path, Integer.MAX_VALUE if there is none
+	 */
+	public int V2VBidirectional(SearchContext ctx, int ux, int uy, int vx, int vy) {
+		ctx.clearPath();
+		if (ux == vx && uy == vy) {
+			return singleVertexPath(ctx, ux, uy);
+		}
+		int src = nodeId(ux, uy);
+		int dest = nodeId(vx, vy);
+		if (src < 0 || dest < 0) {
+			return ctx.pathCost;
+		}
+		buildReverseEdges();
+		ctx.reset(nodeCount);
+		ctx.ensureBackward();
+		int gen = ctx.generation;
+		int[] dist = ctx.dist, parent = ctx.parent, seen = ctx.seen, settled = ctx.settled;
+		int[] distB = ctx.distB, parentB = ctx.parentB, seenB = ctx.seenB, settledB = ctx.settledB;
+		IndexedHeap heap = ctx.heap, heapB = ctx.heapB;
+		seen[src] = gen;
+		dist[src] = 0;
+		parent[src] = -1;
+		heap.insertOrDecrease(src);
+		seenB[dest] = gen;
+		distB[dest] = 0;
+		parentB[dest] = -1;
+		heapB.insertOrDecrease(dest);
+		// Cheapest path found so far runs over the edge meetFrom -> meetTo
+		long best = Long.MAX_VALUE;
+		int meetFrom = -1, meetTo = -1;
+		int u, v, newDist;
+		while (!heap.isEmpty() && !heapB.isEmpty()) {
+			if ((long)heap.peekKey() + heapB.peekKey() >= best) {
+				break;
+			}
+			ctx.settledCount++;
+			if (heap.peekKey() <= heapB.peekKey()) { // Expand forward search
+				u = heap.poll();
+				settled[u] = gen;
+				for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+					v = edgeTarget[e];
+					newDist = dist[u] + edgeWeight[e];
+					if (seen[v] != gen || (settled[v] != gen && dist[v] > newDist)) {
+						seen[v] = gen;
+						dist[v] = newDist;
+						parent[v] = u;
+						heap.insertOrDecrease(v);
 					}
+					if (seenB[v] == gen && (long)newDist + distB[v] < best) {
+						best = (long)newDist + distB[v];
+						meetFrom = u;
+						meetTo = v;
+					}
+				}
+			} else { // Expand backward search over incoming edges
+				v = heapB.poll();
+				settledB[v] = gen;
+				for (int e = revStart[v]; e < revStart[v + 1]; e++) {
+					u = revSource[e];
+					newDist = distB[v] + revWeight[e];
+					if (seenB[u] != gen || (settledB[u] != gen && distB[u] > newDist)) {
+						seenB[u] = gen;
+						distB[u] = newDist;
+						parentB[u] = v;
+						heapB.insertOrDecrease(u);
+					}
+					if (seen[u] == gen && (long)dist[u] + newDist < best) {
+						best = (long)dist[u] + newDist;
+						meetFrom = u;
+						meetTo = v;
+					}
+				}
+			}
+		}
+		if (meetFrom < 0) {
+			return ctx.pathCost;
+		}
+		// Forward half is traced back from meetFrom, backward half forward from meetTo
+		int lenF = 0, lenB = 0;
+		for (int w = meetFrom; w >= 0; w = parent[w]) {
+			lenF++;
+		}
+		for (int w = meetTo; w >= 0; w = parentB[w]) {
+			lenB++;
+		}
+		int[] path = ctx.pathBuffer(2 * (lenF + lenB));
+		int i = 2 * lenF;
+		for (int w = meetFrom; w >= 0; w = parent[w]) {
+			path[--i] = nodeY[w];
+			path[--i] = nodeX[w];
+		}
+		i = 2 * lenF;
+		for (int w = meetTo; w >= 0; w = parentB[w]) {
+			path[i++] = nodeX[w];
+			path[i++] = nodeY[w];
+		}
+		ctx.pathLength = lenF + lenB;
+		ctx.pathCost = (int)best;
+		return ctx.pathCost;
+	} // V2VBidirectional
+	
+	/**
+	 * Calculates the same shortest path cost as V2V with an A* search,
+	 * which settles nodes in order of their distance from the source plus
+	 * their estimated distance to the destination. The heuristic must never
+	 * overestimate the remaining cost. The path is left in ctx.
+	 * @param ctx  Search context of the calling thread
+	 * @param ux  Source vertex x-coordinate
+	 * @param uy  Source vertex y-coordinate
+	 * @param vx  Destination vertex x-coordinate
+	 * @param vy  Destination vertex y-coordinate
+	 * @param h  Lower bound on the cost from a vertex to the destination
+	 * @return  Cost of the path, Integer.MAX_VALUE if there is none
+	 */
+	public int V2VAStar(SearchContext ctx, int ux, int uy, int vx, int vy, Heuristic h) {
+		ctx.clearPath();
+		if (ux == vx && uy == vy) {
+			return singleVertexPath(ctx, ux, uy);
+		}
+		int src = nodeId(ux, uy);
+		int dest = nodeId(vx, vy);
+		if (src < 0 || dest < 0) {
+			return ctx.pathCost;
+		}
+		ctx.reset(nodeCount);
+		ctx.ensurePriority();
+		int gen = ctx.generation;
+		int[] dist = ctx.dist, parent = ctx.parent, seen = ctx.seen, settled = ctx.settled;
+		int[] priority = ctx.priority;
+		IndexedHeap heap = ctx.heapA;
+		seen[src] = gen;
+		dist[src] = 0;
+		parent[src] = -1;
+		priority[src] = h.estimate(ux, uy, vx, vy);
+		heap.insertOrDecrease(src);
+		int u, v, newDist;
+		while (!heap.isEmpty()) {
+			u = heap.poll();
+			settled[u] = gen;
+			ctx.settledCount++;
+			if (u == dest) {
+				return tracePath(ctx, dest);
+			}
+			for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+				v = edgeTarget[e];
+				newDist = dist[u] + edgeWeight[e];
+				// Settled nodes are reopened, so estimates only need to be admissible
+				if (seen[v] != gen || dist[v] > newDist) {
+					seen[v] = gen;
+					dist[v] = newDist;
+					parent[v] = u;
+					priority[v] = newDist + h.estimate(nodeX[v], nodeY[v], vx, vy);
+					heap.insertOrDecrease(v);
 				}
 			}
 		}
-	}
+		return ctx.pathCost;
+	} // V2VAStar
+	
+	/**
+	 * Heuristic for graphs where every edge moves at most one row (y), such
+	 * as graphs built from an importance matrix: the number of rows left
+	 * times the smallest edge weight of the graph.
+	 * @return  Heuristic estimating the cost between two vertices of this graph
+	 */
+	public Heuristic rowDistanceHeuristic() {
+		int minWeight = minEdgeWeight;
+		return (x, y, destX, destY) -> Math.abs(destY - y) * minWeight;
+	} // rowDistanceHeuristic
+	
+	/**
+	 * Stores a path consisting of a single vertex in ctx
+	 * @param ctx  Search context to store the path in
+	 * @param x  X-coordinate
+	 * @param y  Y-coordinate
+	 * @return  Cost of the path, 0
+	 */
+	private static int singleVertexPath(SearchContext ctx, int x, int y) {
+		int[] path = ctx.pathBuffer(2);
+		path[0] = x;
+		path[1] = y;
+		ctx.pathLength = 1;
+		ctx.pathCost = 0;
+		return 0;
+	} // singleVertexPath
+	
+	/**
+	 * Builds the incoming edge arrays used by backward searches if
+	 * they do not exist yet
+	 */
+	private synchronized void buildReverseEdges() {
+		if (revStart != null) {
+			return;
+		}
+		int[] start = new int[nodeCount + 1];
+		for (int e = 0; e < edgeTarget.length; e++) {
+			start[edgeTarget[e] + 1]++;
+		}
+		for (int v = 0; v < nodeCount; v++) {
+			start[v + 1] += start[v];
+		}
+		int[] next = Arrays.copyOf(start, nodeCount);
+		int[] sources = new int[edgeTarget.length];
+		int[] weights = new int[edgeTarget.length];
+		int pos;
+		for (int u = 0; u < nodeCount; u++) {
+			for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+				pos = next[edgeTarget[e]]++;
+				sources[pos] = u;
+				weights[pos] = edgeWeight[e];
+			}
+		}
+		revSource = sources;
+		revWeight = weights;
+		revStart = start;
+	} // buildReverseEdges
+	
+	/**
+	 * Calculates the shortest path between the given source vertex and set of
+	 * destination vertices. Of several minimal paths the one to the destination
+	 * listed first is returned. The path is left in ctx.
+	 * @param ctx  Search context of the calling thread
+	 * @param ux  Source vertex x-coordinate
+	 * @param uy  Source vertex y-coordinate
+	 * @param S  Coordinates of destination vertices, x then y for each vertex
+	 * @return  Cost of the path, Integer.MAX_VALUE if there is none
+	 */
+	public int V2S(SearchContext ctx, int ux, int uy, int[] S) {
+		ctx.clearPath();
+		int src = nodeId(ux, uy);
+		if (src < 0) {
+			return ctx.pathCost;
+		}
+		ctx.sourceBuffer(1)[0] = src;
+		int destCnt = toNodeIds(S, ctx.targetBuffer(S.length / 2));
+		// Calculate shortest paths until every destination is settled
+		CalculateShortestPaths(ctx, 1, destCnt, false);
+		int best = -1;
+		int curNode;
+		for (int i = 0; i < destCnt; i++) {
+			curNode = ctx.targets[i];
+			if (curNode >= 0 && ctx.settled[curNode] == ctx.generation
+				&& (best < 0 || ctx.dist[curNode] < ctx.dist[best])) {
+				best = curNode;
+			}
+		}
+		return (best < 0) ? ctx.pathCost : tracePath(ctx, best);
+	} // V2S
+	
+	/**
+	 * Calculates the shortest path between the given sets of source and
+	 * destination vertices with a single search from all sources at once.
+	 * The path is left in ctx.
+	 * @param ctx  Search context of the calling thread
+	 * @param S1  Coordinates of source vertices, x then y for each vertex
+	 * @param S2  Coordinates of destination vertices, x then y for each vertex
+	 * @return  Cost of the path, Integer.MAX_VALUE if there is none
+	 */
+	public int S2S(SearchContext ctx, int[] S1, int[] S2) {
+		ctx.clearPath();
+		int srcCnt = toNodeIds(S1, ctx.sourceBuffer(S1.length / 2));
+		int destCnt = toNodeIds(S2, ctx.targetBuffer(S2.length / 2));
+		// One search from all sources at once, stopping at the closest destination
+		int dest = CalculateShortestPaths(ctx, srcCnt, destCnt, true);
+		return (dest < 0) ? ctx.pathCost : tracePath(ctx, dest);
+	} // S2S
+	
+	/**
+	 * @param coords  Coordinates of vertices, x then y for each vertex
+	 * @param ids  Array to write the id of each vertex to, -1 for vertices
+	 			   not in the graph
+	 * @return  Number of ids written
+	 */
+	private int toNodeIds(int[] coords, int[] ids) {
+		int n = coords.length / 2;
+		for (int i = 0; i < n; i++) {
+			ids[i] = nodeId(coords[2 * i], coords[2 * i + 1]);
+		}
+		return n;
+	} // toNodeIds
+	
+	/**
+	 * @param coords  Coordinates of vertices, x then y for each vertex
+	 * @return  The coordinates as an int array
+	 */
+	private static int[] toArray(ArrayList<Integer> coords) {
+		int[] arr = new int[coords.size()];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = coords.get(i);
+		}
+		return arr;
+	} // toArray
+	
+	/**
+	 * @return  Search context used by the ArrayList based queries, created
+	 			on first use
+	 */
+	private SearchContext defaultContext() {
+		if (defaultCtx == null) {
+			defaultCtx = newSearchContext();
+		}
+		return defaultCtx;
+	} // defaultContext
 	
 	/**
 	 * Calculates the shortest path using Djikstra's algorithm
 	 * from specified source vertex to specified destination vertex.
+	 * Not safe to call from several threads at once, use
+	 * V2V(SearchContext, int, int, int, int) for that.
 	 * @param ux  Source vertex x-coordinate
 	 * @param uy  Source vertex y-coordinate
 	 * @param vx  Destination vertex x-coordinate
@@ -312,47 +1695,9 @@ public class WGraph {
       			in the returned path (path is an ordered sequence of vertices)
 	 */
 	public ArrayList<Integer> V2V(int ux, int uy, int vx, int vy) {
-		Node src = new Node(ux, uy);
-		int destIndex;
-		Node curNode;
-		ArrayList<Integer> minPath = new ArrayList<Integer>();
-		destIndex = adjList.indexOf(new Node(vx, vy));
-		/*
-		// Error check given coordinates
-		if (adjList.indexOf(src) < 0) {
-			throw new IllegalArgumentException("Given source node with coordinates " + ux + ", " + uy + " not in graph.");
-		}
-		if (destIndex < 0) {
-			throw new IllegalArgumentException("Given destination node with coordinates " + vx + ", " + vy + " not in graph.");
-		}
-		*/
-		// Check if source and destination are equal
-		if (src.equals(new Node(vx, vy))) {
-			minPathCost = 0;
-			minPath.add(src.x);
-			minPath.add(src.y);
-			return minPath;
-		}
-		// Calculate the shortest paths
-		CalculateShortestPaths(src);
-		// Trace back shortest path from destination
-		curNode = adjList.get(destIndex);
-		minPathCost = curNode.dist;
-		boolean pathToSrc = false;
-		do {
-			minPath.add(0, curNode.y);
-			minPath.add(0, curNode.x);
-			curNode = curNode.parent;
-			if (curNode != null) {
-				pathToSrc = curNode.equals(src);
-			}
-		} while(curNode != null);
-		
-		if (!pathToSrc) {
-			minPathCost = Integer.MAX_VALUE;
-			minPath.clear();
-		}
-		return minPath;
+		SearchContext ctx = defaultContext();
+		minPathCost = V2V(ctx, ux, uy, vx, vy);
+		return ctx.getPathList();
 	} // V2V
 	
 	/**
@@ -364,6 +1709,7 @@ public class WGraph {
 	 * vertex in the ArrayList.
 	 * Only one minimal path is returned. If there are multiple minimal paths
 	 * the returned path is picked arbitrarily.
+	 * Not safe to call from several threads at once.
 	 * @param ux  Source vertex x-coordinate
 	 * @param uy  Source vertex y-coordinate
 	 * @param S  Represents a set of destination vertices (Assuming correct formatting)
@@ -373,43 +1719,10 @@ public class WGraph {
 				in the returned path (path is an ordered sequence of vertices)
 	 */
 	public ArrayList<Integer> V2S(int ux, int uy, ArrayList<Integer> S) {
-		Node src = new Node(ux, uy);
-		Node curNode;
-		ArrayList<Integer> minPath = new ArrayList<Integer>();
-		/*
-		// Error check given coordinates
-		if (adjList.indexOf(src) < 0) {
-			throw new IllegalArgumentException("Given source node with coordinates " + ux + ", " + uy + " not in graph.");
-		}
-		*/
-		// Calculate shortest paths
-		CalculateShortestPaths(src);
-		// Only trace back shortest paths with costs which are less than current minimal cost
-		ArrayList<Integer> tmpPath = new ArrayList<Integer>();
-		int curDist;
-		boolean pathToSrc;
-		minPathCost = Integer.MAX_VALUE;
-		for (int i = 0; i < S.size(); i+=2) {
-			curNode = adjList.get(adjList.indexOf(new Node(S.get(i), S.get(i+1))));
-			if (curNode.dist < minPathCost) {
-				curDist = curNode.dist;
-				pathToSrc = false;
-				do {
-					tmpPath.add(0, curNode.y);
-					tmpPath.add(0, curNode.x);
-					pathToSrc = curNode.equals(src);
-					curNode = curNode.parent;
-				} while(curNode != null);
-				
-				if (pathToSrc) {
-					minPath = new ArrayList<Integer>(tmpPath);
-					minPathCost = curDist;
-				}
-				tmpPath.clear();
-			}
-		}
-		return minPath;
-   	} // V2S
+		SearchContext ctx = defaultContext();
+		minPathCost = V2S(ctx, ux, uy, toArray(S));
+		return ctx.getPathList();
+	} // V2S
 	
 	/**
 	 * Calculates the shortest path between given set of source vertices and
@@ -420,6 +1733,7 @@ public class WGraph {
 	 * vertex in the ArrayList.
 	 * Only one minimal path is returned. If there are multiple minimal paths
 	 * the returned path is picked arbitrarily.
+	 * Not safe to call from several threads at once.
 	 * @param S1  Represents a set of source vertices (Assuming correct formatting)
 	 * @param S2  Represents a set of destination vertices (Assuming correct formatting)
 	 * @return  ArrayList containing even number of integers,
@@ -428,19 +1742,10 @@ public class WGraph {
 				in the returned path (path is an ordered sequence of vertices)
 	 */
 	public ArrayList<Integer> S2S(ArrayList<Integer> S1, ArrayList<Integer> S2) {
-		ArrayList<Integer> tmpPath;
-		ArrayList<Integer> minPath = new ArrayList<Integer>();
-		int minCost = Integer.MAX_VALUE;
-		
-		for (int i = 0; i < S1.size(); i+=2) {
-			tmpPath = V2S(S1.get(i), S1.get(i+1), S2);
-			if(minPathCost < minCost) {
-				minCost = minPathCost;
-				minPath = new ArrayList<Integer>(tmpPath);
-			}
-		}
-		return minPath;
-	}
+		SearchContext ctx = defaultContext();
+		minPathCost = S2S(ctx, toArray(S1), toArray(S2));
+		return ctx.getPathList();
+	} // S2S
 	
 	/*
 	 * (non-Javadoc)
@@ -448,17 +1753,15 @@ public class WGraph {
 	 */
 	@Override
 	public String toString() {
-		Node curNode;
 		StringBuilder wGraphStr = new StringBuilder();
 		wGraphStr.append("Nodes: " + numNodes + "\n");
 		wGraphStr.append("Edges: " + numEdges + "\n");
-		for (int i = 0; i < adjList.size(); i++) {
-			curNode = adjList.get(i);
-			wGraphStr.append(curNode.toString());
-			for (Edge e : curNode.edges) {
+		for (int u = 0; u < nodeCount; u++) {
+			wGraphStr.append("(" + nodeX[u] + "," + nodeY[u] + ")");
+			for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
 				wGraphStr.append("->");
-				wGraphStr.append(e.weight);
-				wGraphStr.append(e.node.toString());
+				wGraphStr.append(edgeWeight[e]);
+				wGraphStr.append("(" + nodeX[edgeTarget[e]] + "," + nodeY[edgeTarget[e]] + ")");
 			}
 			wGraphStr.append("\n");
 		}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Importance kernel computing a vector of pixels at a time with the
+ * incubating Vector API. Pixels stay packed, the channels are unpacked
+ * in registers. Kept out of src since it needs the incubator module:
+ *   javac --add-modules jdk.incubator.vector -d out src/*.java src/vector/*.java
+ *   java --add-modules jdk.incubator.vector -cp out ...
+ * ImportanceKernel loads it when available.
+ *
+ * @author Weston Berg
+ */
+final class VectorImportanceKernel extends ImportanceKernel {
+	
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	@Override
+	void computeRow(int[] pixels, int row, int up, int down, int from, int to, int[] importance) {
+		int j = from;
+		int bound = from + SPECIES.loopBound(to - from);
+		IntVector x, y;
+		for (; j < bound; j += SPECIES.length()) {
+			x = distance(IntVector.fromArray(SPECIES, pixels, row + j - 1),
+						 IntVector.fromArray(SPECIES, pixels, row + j + 1));
+			y = distance(IntVector.fromArray(SPECIES, pixels, up + j),
+						 IntVector.fromArray(SPECIES, pixels, down + j));
+			x.add(y).intoArray(importance, row + j);
+		}
+		// Remaining columns one at a time
+		for (; j < to; j++) {
+			importance[row + j] = ImageProcessor.computePDist(pixels[row + j - 1], pixels[row + j + 1])
+								+ ImageProcessor.computePDist(pixels[up + j], pixels[down + j]);
+		}
+	} // computeRow
+	
+	/**
+	 * @param p  Packed pixels
+	 * @param q  Packed pixels
+	 * @return  Sum of squared differences of the RGB values of each pair of pixels
+	 */
+	private static IntVector distance(IntVector p, IntVector q) {
+		IntVector r = channel(p, 16).sub(channel(q, 16));
+		IntVector g = channel(p, 8).sub(channel(q, 8));
+		IntVector b = channel(p, 0).sub(channel(q, 0));
+		return r.mul(r).add(g.mul(g)).add(b.mul(b));
+	} // distance
+	
+	private static IntVector channel(IntVector p, int shift) {
+		return p.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+	} // channel
+	
+	@Override
+	String name() {
+		return "vector " + SPECIES.length() + " x int";
+	} // name
+	
+} // VectorImportanceKernel
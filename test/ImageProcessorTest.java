@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of ImageProcessor
+ *
+ * @author Weston Berg
+ */
+public class ImageProcessorTest {
+	
+	@TempDir
+	Path dir;
+	
+	/**
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @return  Image of distinct pixels
+	 */
+	private static ImageProcessor image(int height, int width) {
+		int[] pixels = new int[height * width];
+		for (int p = 0; p < pixels.length; p++) {
+			pixels[p] = ImageProcessor.Pixel.pack((p * 37) & 0xFF, (p * 91) & 0xFF, (p * 13) & 0xFF);
+		}
+		return new ImageProcessor(height, width, pixels);
+	} // image
+	
+	@Test
+	public void readRejectsColorValuesOutOfRange() throws IOException {
+		Path high = dir.resolve("high.txt");
+		Files.writeString(high, "2\n2\n1 2 3 4 5 6\n7 8 9 300 0 0\n");
+		IOException e = assertThrows(IOException.class, () -> ImageProcessor.read(high.toString()));
+		assertTrue(e.getMessage().contains("Row 1"));
+		Path low = dir.resolve("low.txt");
+		Files.writeString(low, "1\n2\n1 2 3 4 -1 6\n");
+		assertThrows(IOException.class, () -> ImageProcessor.read(low.toString()));
+	} // readRejectsColorValuesOutOfRange
+	
+	@Test
+	public void reduceRejectsInvalidReductions() {
+		ImageProcessor img = image(4, 5);
+		assertThrows(IllegalArgumentException.class, () -> img.reduce(5));
+		assertThrows(IllegalArgumentException.class, () -> img.reduce(-1));
+		String out = dir.resolve("out.txt").toString();
+		assertThrows(IllegalArgumentException.class, () -> img.writeReduced(new int[] {-1, 2}, new String[] {out, out}));
+		assertEquals(5, img.getWidth());
+	} // reduceRejectsInvalidReductions
+	
+	@Test
+	public void writeReducedWaitsForEveryWrite() {
+		ImageProcessor img = image(4, 5);
+		String missing = dir.resolve("missing").resolve("a.txt").toString();
+		Path written = dir.resolve("b.txt");
+		assertThrows(IOException.class, () -> img.writeReduced(new int[] {1, 2, 3},
+															   new String[] {missing, missing, written.toString()}));
+		assertTrue(Files.exists(written));
+	} // writeReducedWaitsForEveryWrite
+	
+	@Test
+	public void seamOrderRejectsRemovingEveryColumn() {
+		ImageProcessor img = image(4, 5);
+		String index = dir.resolve("img.bseq").toString();
+		assertThrows(IllegalArgumentException.class, () -> img.writeSeamOrder(5, index));
+		assertThrows(IllegalArgumentException.class, () -> img.writeSeamOrder(-1, index));
+	} // seamOrderRejectsRemovingEveryColumn
+	
+	@Test
+	public void seamOrderReducesToOneColumn() throws IOException {
+		ImageProcessor img = image(4, 5);
+		String index = dir.resolve("img.bseq").toString();
+		img.writeSeamOrder(4, index);
+		ImageProcessor reduced = img.reduce(4, index);
+		assertEquals(4, reduced.getHeight());
+		assertEquals(1, reduced.getWidth());
+		assertThrows(IllegalArgumentException.class, () -> img.reduce(5, index));
+	} // seamOrderReducesToOneColumn
+	
+	@Test
+	public void resizeUpdatesImportanceLikeRecomputing() {
+		ImageProcessor updated = image(23, 31);
+		ImageProcessor recomputed = image(23, 31);
+		recomputed.setIncrementalImportance(false);
+		ImageProcessor a = updated.resize(17, 12);
+		ImageProcessor b = recomputed.resize(17, 12);
+		assertEquals(12, a.getHeight());
+		assertEquals(17, a.getWidth());
+		assertArrayEquals(b.getPixels(), a.getPixels());
+		assertEquals(recomputed.getRemovedEnergy(), updated.getRemovedEnergy());
+	} // resizeUpdatesImportanceLikeRecomputing
+	
+} // ImageProcessorTest
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of OutOfCoreImage
+ *
+ * @author Weston Berg
+ */
+public class OutOfCoreImageTest {
+	
+	@TempDir
+	Path dir;
+	
+	/**
+	 * Writes an image with channels from 0 to 2, so many cuts tie
+	 * @param FName  Filename to write the image to
+	 * @param height  Height of the image in pixels
+	 * @param width  Width of the image in pixels
+	 * @param seed  Seed of the pixel values
+	 * @return  Filename of the image
+	 * @throws IOException  If the image cannot be written
+	 */
+	private String image(String FName, int height, int width, long seed) throws IOException {
+		Random rand = new Random(seed);
+		int[] pixels = new int[height * width];
+		for (int p = 0; p < pixels.length; p++) {
+			pixels[p] = ImageProcessor.Pixel.pack(rand.nextInt(3), rand.nextInt(3), rand.nextInt(3));
+		}
+		String path = dir.resolve(FName).toString();
+		new ImageProcessor(height, width, pixels).write(path);
+		return path;
+	} // image
+	
+	@Test
+	public void writeReducedMatchesInMemory() throws IOException {
+		Path temp = Files.createDirectory(dir.resolve("temp"));
+		for (String ext : new String[] {".txt", ImageProcessor.BINARY_EXTENSION}) {
+			String input = image("in" + ext, 23, 37, 7);
+			ImageProcessor img = ImageProcessor.read(input);
+			try (OutOfCoreImage ooc = new OutOfCoreImage(input, temp)) {
+				// Several reductions of one image, each starting from the loaded pixels
+				for (int k : new int[] {0, 1, 12, 36, 5}) {
+					String expected = dir.resolve("mem" + k + ext).toString();
+					String actual = dir.resolve("ooc" + k + ext).toString();
+					img.writeReduced(k, expected);
+					ooc.writeReduced(k, actual);
+					assertArrayEquals(Files.readAllBytes(Path.of(expected)), Files.readAllBytes(Path.of(actual)));
+				}
+			}
+		}
+		try (Stream<Path> left = Files.list(temp)) {
+			assertTrue(left.findAny().isEmpty());
+		}
+	} // writeReducedMatchesInMemory
+	
+	@Test
+	public void writeReducedRejectsInvalidReductions() throws IOException {
+		String input = image("in.txt", 4, 5, 1);
+		String output = dir.resolve("out.txt").toString();
+		try (OutOfCoreImage ooc = new OutOfCoreImage(input, dir)) {
+			assertThrows(IllegalArgumentException.class, () -> ooc.writeReduced(5, output));
+			assertThrows(IllegalArgumentException.class, () -> ooc.writeReduced(-1, output));
+		}
+	} // writeReducedRejectsInvalidReductions
+	
+} // OutOfCoreImageTest
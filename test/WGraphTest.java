@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2019 Weston Berg
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of WGraph
+ *
+ * @author Weston Berg
+ */
+public class WGraphTest {
+	
+	@TempDir
+	Path dir;
+	
+	/**
+	 * @param header  Node and edge counts of the file
+	 * @param edges  Lines of the form "ux uy vx vy weight"
+	 * @return  Graph read from a text graph file
+	 * @throws IOException  If the file cannot be written
+	 */
+	private WGraph read(String header, String... edges) throws IOException {
+		Path file = dir.resolve("graph.txt");
+		Files.writeString(file, header + "\n" + String.join("\n", edges) + "\n");
+		return new WGraph(file.toString());
+	} // read
+	
+	/**
+	 * @param width  Number of nodes per row
+	 * @param height  Number of rows
+	 * @param minWeight  Smallest edge weight
+	 * @param maxWeight  Largest edge weight
+	 * @param seed  Seed of the edge weights
+	 * @return  Edge lines of a graph where every node has edges to its
+	 			row neighbors and to the three nodes below it
+	 */
+	private static String[] gridEdges(int width, int height, int minWeight, int maxWeight, long seed) {
+		Random rand = new Random(seed);
+		ArrayList<String> edges = new ArrayList<String>();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					if (x + dx < 0 || x + dx >= width) {
+						continue;
+					}
+					if (dx != 0) {
+						edges.add(x + " " + y + " " + (x + dx) + " " + y + " " + (minWeight + rand.nextInt(maxWeight - minWeight + 1)));
+					}
+					if (y + 1 < height) {
+						edges.add(x + " " + y + " " + (x + dx) + " " + (y + 1) + " " + (minWeight + rand.nextInt(maxWeight - minWeight + 1)));
+					}
+				}
+			}
+		}
+		return edges.toArray(new String[0]);
+	} // gridEdges
+	
+	/**
+	 * @param edges  Lines of the form "ux uy vx vy weight"
+	 * @param ctx  Context holding a path found in the graph of the edges
+	 * @return  Sum of the weights of the edges along the path
+	 */
+	private static int pathCost(String[] edges, WGraph.SearchContext ctx) {
+		HashMap<String, Integer> weights = new HashMap<String, Integer>();
+		int split;
+		for (String edge : edges) {
+			split = edge.lastIndexOf(' ');
+			weights.put(edge.substring(0, split), Integer.parseInt(edge.substring(split + 1)));
+		}
+		int[] path = ctx.getPath();
+		int cost = 0;
+		Integer weight;
+		for (int i = 2; i < 2 * ctx.getPathLength(); i += 2) {
+			weight = weights.get(path[i - 2] + " " + path[i - 1] + " " + path[i] + " " + path[i + 1]);
+			assertTrue(weight != null, "Path follows a missing edge");
+			cost += weight;
+		}
+		return cost;
+	} // pathCost
+	
+	/**
+	 * @param width  Number of nodes per row
+	 * @param y  Row of the nodes
+	 * @return  Coordinates of every node of the row, x then y for each
+	 */
+	private static int[] row(int width, int y) {
+		int[] S = new int[2 * width];
+		for (int x = 0; x < width; x++) {
+			S[2 * x] = x;
+			S[2 * x + 1] = y;
+		}
+		return S;
+	} // row
+	
+	/**
+	 * Runs V2V, V2S and S2S on a graph with the given queue
+	 * @param graph  Graph to search
+	 * @param type  Queue to search with
+	 * @param width  Number of nodes per row
+	 * @param height  Number of rows
+	 * @return  Context of each query, holding its path and cost
+	 */
+	private static WGraph.SearchContext[] queries(WGraph graph, WGraph.QueueType type, int width, int height) {
+		graph.setQueueType(type);
+		WGraph.SearchContext[] ctxs = new WGraph.SearchContext[3];
+		for (int q = 0; q < ctxs.length; q++) {
+			ctxs[q] = graph.newSearchContext();
+		}
+		graph.V2V(ctxs[0], 0, 0, width - 1, height - 1);
+		graph.V2S(ctxs[1], width / 2, 0, row(width, height - 1));
+		graph.S2S(ctxs[2], row(width, 0), row(width, height - 1));
+		return ctxs;
+	} // queries
+	
+	/**
+	 * @param expected  Contexts of the queries with the expected paths
+	 * @param actual  Contexts of the same queries to check
+	 */
+	private static void assertSamePaths(WGraph.SearchContext[] expected, WGraph.SearchContext[] actual) {
+		for (int q = 0; q < expected.length; q++) {
+			assertEquals(expected[q].getPathCost(), actual[q].getPathCost());
+			assertArrayEquals(Arrays.copyOf(expected[q].getPath(), 2 * expected[q].getPathLength()),
+							  Arrays.copyOf(actual[q].getPath(), 2 * actual[q].getPathLength()));
+		}
+	} // assertSamePaths
+	
+	/**
+	 * @param ctx  Context holding a path
+	 * @param query  Source then destination coordinates of the path
+	 */
+	private static void assertPathEnds(WGraph.SearchContext ctx, int[] query) {
+		int[] path = ctx.getPath();
+		int end = 2 * ctx.getPathLength();
+		assertArrayEquals(query, new int[] {path[0], path[1], path[end - 2], path[end - 1]});
+	} // assertPathEnds
+	
+	@Test
+	public void readsEdges() throws IOException {
+		WGraph graph = read("3 2", "0 0 1 1 5", "1 1 2 2 7");
+		assertEquals(Arrays.asList(0, 0, 1, 1, 2, 2), graph.V2V(0, 0, 2, 2));
+	} // readsEdges
+	
+	@Test
+	public void headerCountsAreOnlyHints() throws IOException {
+		// Counts far larger than the file must not be allocated up front
+		WGraph graph = read("2000000000 2000000000", "0 0 1 1 5", "1 1 2 2 7");
+		assertEquals(Arrays.asList(0, 0, 1, 1, 2, 2), graph.V2V(0, 0, 2, 2));
+		graph = read("1073741824 1073741824", "0 0 1 1 5", "1 1 2 2 7");
+		assertEquals(Arrays.asList(0, 0, 1, 1, 2, 2), graph.V2V(0, 0, 2, 2));
+	} // headerCountsAreOnlyHints
+	
+	@Test
+	public void growsPastSmallCounts() throws IOException {
+		String[] edges = new String[100];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = "0 " + i + " 0 " + (i + 1) + " 1";
+		}
+		WGraph graph = read("1 1", edges);
+		assertEquals(2 * (edges.length + 1), graph.V2V(0, 0, 0, edges.length).size());
+	} // growsPastSmallCounts
+	
+	@Test
+	public void radixHeapMatchesBinaryHeap() throws IOException {
+		// Weights spread widely enough that every shortest path is unique
+		String[] edges = gridEdges(12, 9, 0, 1 << 20, 3);
+		WGraph graph = read("108 " + edges.length, edges);
+		WGraph.SearchContext[] binary = queries(graph, WGraph.QueueType.BINARY_HEAP, 12, 9);
+		assertSamePaths(binary, queries(graph, WGraph.QueueType.RADIX_HEAP, 12, 9));
+		assertSamePaths(binary, queries(graph, WGraph.QueueType.AUTO, 12, 9));
+		for (WGraph.SearchContext ctx : binary) {
+			assertEquals(ctx.getPathCost(), pathCost(edges, ctx));
+		}
+	} // radixHeapMatchesBinaryHeap
+	
+	@Test
+	public void radixHeapTiesCostTheSame() throws IOException {
+		// Weights 0 to 2 leave many equal cost paths, either queue may pick any of them
+		String[] edges = gridEdges(12, 9, 0, 2, 5);
+		WGraph graph = read("108 " + edges.length, edges);
+		WGraph.SearchContext[] binary = queries(graph, WGraph.QueueType.BINARY_HEAP, 12, 9);
+		WGraph.SearchContext[] radix = queries(graph, WGraph.QueueType.RADIX_HEAP, 12, 9);
+		for (int q = 0; q < binary.length; q++) {
+			assertEquals(binary[q].getPathCost(), radix[q].getPathCost());
+			assertEquals(radix[q].getPathCost(), pathCost(edges, radix[q]));
+			assertEquals(binary[q].getPathCost(), pathCost(edges, binary[q]));
+		}
+		// Each queue breaks ties the same way every time
+		assertSamePaths(radix, queries(graph, WGraph.QueueType.RADIX_HEAP, 12, 9));
+		assertSamePaths(binary, queries(graph, WGraph.QueueType.BINARY_HEAP, 12, 9));
+	} // radixHeapTiesCostTheSame
+	
+	@Test
+	public void autoUsesBinaryHeapAboveRadixMaxWeight() throws IOException {
+		// Equal cost paths abound, so only the binary heap gives the same ones
+		int min = WGraph.RADIX_MAX_WEIGHT;
+		String[] edges = gridEdges(12, 9, min, min + 2, 5);
+		WGraph graph = read("108 " + edges.length, edges);
+		WGraph.SearchContext[] binary = queries(graph, WGraph.QueueType.BINARY_HEAP, 12, 9);
+		assertSamePaths(binary, queries(graph, WGraph.QueueType.AUTO, 12, 9));
+		for (WGraph.SearchContext ctx : binary) {
+			assertEquals(ctx.getPathCost(), pathCost(edges, ctx));
+		}
+	} // autoUsesBinaryHeapAboveRadixMaxWeight
+	
+	@Test
+	public void radixHeapFallsBackOnNegativeWeights() throws IOException {
+		String[] edges = gridEdges(12, 9, 0, 2, 5);
+		edges[0] = edges[0].substring(0, edges[0].lastIndexOf(' ')) + " -1";
+		WGraph graph = read("108 " + edges.length, edges);
+		assertSamePaths(queries(graph, WGraph.QueueType.BINARY_HEAP, 12, 9),
+						queries(graph, WGraph.QueueType.RADIX_HEAP, 12, 9));
+	} // radixHeapFallsBackOnNegativeWeights
+	
+	@Test
+	public void bidirectionalAndAStarCostTheSameAsV2V() throws IOException {
+		for (int minWeight : new int[] {0, 3}) {
+			// Few distinct weights, so most queries have several minimal paths
+			String[] edges = gridEdges(10, 8, minWeight, minWeight + 2, 11);
+			WGraph graph = read("80 " + edges.length, edges);
+			WGraph.SearchContext ctx = graph.newSearchContext();
+			WGraph.Heuristic h = graph.rowDistanceHeuristic();
+			int[][] pairs = {{0, 0, 9, 7}, {4, 0, 4, 7}, {9, 1, 0, 6}, {2, 3, 7, 3}, {5, 5, 5, 5}};
+			int cost;
+			for (int[] p : pairs) {
+				cost = graph.V2V(ctx, p[0], p[1], p[2], p[3]);
+				assertEquals(cost, graph.V2VBidirectional(ctx, p[0], p[1], p[2], p[3]));
+				assertEquals(cost, pathCost(edges, ctx));
+				assertPathEnds(ctx, p);
+				assertEquals(cost, graph.V2VAStar(ctx, p[0], p[1], p[2], p[3], h));
+				assertEquals(cost, pathCost(edges, ctx));
+				assertPathEnds(ctx, p);
+			}
+		}
+	} // bidirectionalAndAStarCostTheSameAsV2V
+	
+	@Test
+	public void aStarReopensSettledNodes() throws IOException {
+		// (2, 0) is settled through (1, 0) before the cheaper path through
+		// (1, 1), whose admissible estimate of 3 delays it, reaches it
+		WGraph graph = read("5 5", "0 0 1 0 1", "0 0 1 1 1", "1 0 2 0 2", "1 1 2 0 1", "2 0 3 0 5");
+		WGraph.Heuristic h = (x, y, destX, destY) -> (x == 1 && y == 1) ? 3 : 0;
+		WGraph.SearchContext ctx = graph.newSearchContext();
+		assertEquals(7, graph.V2V(ctx, 0, 0, 3, 0));
+		assertEquals(7, graph.V2VBidirectional(ctx, 0, 0, 3, 0));
+		assertEquals(7, graph.V2VAStar(ctx, 0, 0, 3, 0, h));
+		assertArrayEquals(new int[] {0, 0, 1, 1, 2, 0, 3, 0}, Arrays.copyOf(ctx.getPath(), 2 * ctx.getPathLength()));
+		// Five nodes, one of them settled twice
+		assertEquals(6, ctx.getSettledCount());
+	} // aStarReopensSettledNodes
+	
+	@Test
+	public void binaryFileRoundTrip() throws IOException {
+		String[] edges = gridEdges(10, 8, 0, 2, 13);
+		ArrayList<ArrayList<Integer>> importance = new ArrayList<ArrayList<Integer>>();
+		Random rand = new Random(13);
+		for (int i = 0; i < 8; i++) {
+			importance.add(new ArrayList<Integer>());
+			for (int j = 0; j < 10; j++) {
+				importance.get(i).add(rand.nextInt(3));
+			}
+		}
+		// Graphs read from a file are indexed by coordinates, graphs built from importance by grid
+		for (WGraph graph : new WGraph[] {read("80 " + edges.length, edges), new WGraph(importance)}) {
+			String file = dir.resolve("graph" + WGraph.BINARY_EXTENSION).toString();
+			graph.save(file);
+			WGraph loaded = WGraph.read(file);
+			assertEquals(graph.toString(), loaded.toString());
+			for (WGraph.QueueType type : WGraph.QueueType.values()) {
+				assertSamePaths(queries(graph, type, 10, 8), queries(loaded, type, 10, 8));
+			}
+		}
+	} // binaryFileRoundTrip
+	
+	@Test
+	public void corruptBinaryFilesAreRejected() throws IOException {
+		String[] edges = gridEdges(4, 3, 0, 2, 17);
+		Path file = dir.resolve("graph" + WGraph.BINARY_EXTENSION);
+		read("12 " + edges.length, edges).save(file.toString());
+		byte[] bytes = Files.readAllBytes(file);
+		Path truncated = dir.resolve("truncated" + WGraph.BINARY_EXTENSION);
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+		assertThrows(IOException.class, () -> WGraph.read(truncated.toString()));
+		Path header = dir.resolve("header" + WGraph.BINARY_EXTENSION);
+		Files.write(header, Arrays.copyOf(bytes, 12));
+		assertThrows(IOException.class, () -> WGraph.read(header.toString()));
+		bytes[0] ^= 1;
+		Path magic = dir.resolve("magic" + WGraph.BINARY_EXTENSION);
+		Files.write(magic, bytes);
+		assertThrows(IOException.class, () -> WGraph.read(magic.toString()));
+	} // corruptBinaryFilesAreRejected
+	
+} // WGraphTest